@@ -0,0 +1,219 @@
+package hudson.plugins.gradle;
+
+import hudson.plugins.gradle.model.GradleDependencyInfo;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Finds the subprojects of a multi-project build affected by a change: the subprojects owning a changed file and
+ * every subproject depending on one of them, directly or transitively.
+ */
+public class AffectedSubprojects {
+
+    // command line options of Gradle and of its built-in tasks that take the next token as their argument
+    private static final Set<String> OPTIONS_WITH_ARGUMENT = new HashSet<String>(Arrays.asList(
+            "-b", "--build-file", "-c", "--settings-file", "-g", "--gradle-user-home", "-I", "--init-script",
+            "-p", "--project-dir", "-x", "--exclude-task", "-D", "--system-prop", "-P", "--project-prop",
+            "-F", "--dependency-verification", "-M", "--write-verification-metadata", "--project-cache-dir",
+            "--include-build", "--console", "--warning-mode", "--priority", "--max-workers", "--update-locks",
+            "--tests", "--configuration", "--dependency", "--task", "--type", "--dsl", "--project-name",
+            "--package", "--test-framework", "--gradle-version", "--distribution-type", "--gradle-distribution-url",
+            "--gradle-distribution-sha256-sum"));
+
+    private final File rootDirectory;
+    private final ReachabilityIndex<GradleDependencyInfo> index;
+    // the names of the tasks of every project of the build, null if unknown
+    private final Map<String, List<String>> tasksByPath = new HashMap<String, List<String>>();
+
+    public AffectedSubprojects(GradleDependencyInfo root) {
+        this.rootDirectory = getDirectory(root);
+        tasksByPath.put(root.getPath(), root.getTasks());
+
+        final Map<File, GradleDependencyInfo> byDirectory = new HashMap<File, GradleDependencyInfo>();
+        collect(root.getChildGradleDependencyInfos(), byDirectory);
+
+        index = new ReachabilityIndex<GradleDependencyInfo>(byDirectory.values(), new ReachabilityIndex.Edges<GradleDependencyInfo>() {
+            public Collection<GradleDependencyInfo> getUpstream(GradleDependencyInfo project) {
+                List<GradleDependencyInfo> upstream = new ArrayList<GradleDependencyInfo>();
+
+                for (File dir : project.getProjectDependencies()) {
+                    GradleDependencyInfo dependency = byDirectory.get(dir);
+                    if (dependency != null)
+                        upstream.add(dependency);
+                }
+
+                return upstream;
+            }
+        });
+    }
+
+    private void collect(List<GradleDependencyInfo> children, Map<File, GradleDependencyInfo> byDirectory) {
+        if (children == null)
+            return;
+
+        for (GradleDependencyInfo child : children) {
+            File dir = getDirectory(child);
+
+            if (dir != null && child.getPath() != null)
+                byDirectory.put(dir, child);
+
+            tasksByPath.put(child.getPath(), child.getTasks());
+
+            collect(child.getChildGradleDependencyInfos(), byDirectory);
+        }
+    }
+
+    private static File getDirectory(GradleDependencyInfo project) {
+        if (project.getProjectDirectory() != null)
+            return project.getProjectDirectory();
+
+        return project.getGradleFile() != null ? project.getGradleFile().getParentFile() : null;
+    }
+
+    /**
+     * Determines the affected subprojects.
+     *
+     * @param workspace    the directory the changed paths are relative to
+     * @param changedPaths the changed files, relative to the workspace
+     * @return the Gradle paths of the affected subprojects, or null if the whole build is affected: nothing
+     * changed, a file of the root project changed or the changes can't be attributed to the build at all
+     */
+    public List<String> getAffected(String workspace, Collection<String> changedPaths) {
+        if (rootDirectory == null || changedPaths.isEmpty() || index.size() == 0)
+            return null;
+
+        String root = relativize(workspace, rootDirectory);
+        if (root == null)
+            return null;
+
+        Map<String, GradleDependencyInfo> byRelativeDirectory = new TreeMap<String, GradleDependencyInfo>();
+        for (GradleDependencyInfo project : index.getNodes()) {
+            String dir = relativize(workspace, getDirectory(project));
+            if (dir != null)
+                byRelativeDirectory.put(dir, project);
+        }
+
+        BitSet affected = new BitSet(index.size());
+
+        for (String changedPath : changedPaths) {
+            String path = changedPath.replace('\\', '/');
+
+            if (!path.startsWith(root))
+                continue; // outside of the Gradle build
+
+            GradleDependencyInfo owner = null;
+            int longest = -1;
+
+            for (Map.Entry<String, GradleDependencyInfo> entry : byRelativeDirectory.entrySet()) {
+                if (path.startsWith(entry.getKey()) && entry.getKey().length() > longest) {
+                    owner = entry.getValue();
+                    longest = entry.getKey().length();
+                }
+            }
+
+            if (owner == null)
+                return null; // build scripts, settings and other files of the root project affect everything
+
+            int n = index.indexOf(owner);
+            if (!affected.get(n)) {
+                affected.set(n);
+                affected.or(index.transitiveDownstream(n));
+            }
+        }
+
+        if (affected.isEmpty())
+            return null;
+
+        List<String> paths = new ArrayList<String>();
+        for (GradleDependencyInfo project : index.toList(affected)) {
+            paths.add(project.getPath());
+        }
+
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * @return the directory relative to the workspace with a trailing '/', "" for the workspace itself or null if
+     * it isn't inside the workspace
+     */
+    private static String relativize(String workspace, File dir) {
+        String base = workspace.replace('\\', '/');
+        String path = dir.getPath().replace('\\', '/');
+
+        if (!base.endsWith("/"))
+            base += "/";
+        if (!path.endsWith("/"))
+            path += "/";
+
+        if (path.equals(base))
+            return "";
+
+        return path.startsWith(base) ? path.substring(base.length()) : null;
+    }
+
+    /**
+     * Qualifies every unqualified task name with those of the given project paths whose project has a task of that
+     * name, see {@link #rewriteTasks(String, Collection, Map)}.
+     */
+    public String rewriteTasks(String tasks, Collection<String> projectPaths) {
+        return rewriteTasks(tasks, projectPaths, tasksByPath);
+    }
+
+    /**
+     * Qualifies every unqualified task name with those of the given project paths whose project has a task of that
+     * name, e.g. <tt>clean publish</tt> becomes <tt>:a:clean :b:clean :a:publish</tt> if only <tt>:a</tt> publishes.
+     * Just like the unqualified name, a task is left out of the projects lacking it. Options, their arguments and
+     * qualified tasks are left as they are, arguments given as separate tokens included.
+     *
+     * @param tasksByPath the names of the tasks of every project of the build by project path, null if unknown
+     * @return the rewritten tasks, or null if they can't be narrowed: the tasks of a project are unknown, a name isn't
+     * the name of a task of the build, such as an abbreviation, or none of the projects has any of the tasks
+     */
+    static String rewriteTasks(String tasks, Collection<String> projectPaths, Map<String, ? extends Collection<String>> tasksByPath) {
+        Set<String> known = new HashSet<String>();
+        for (Collection<String> names : tasksByPath.values()) {
+            if (names == null)
+                return null;
+            known.addAll(names);
+        }
+
+        StringBuilder result = new StringBuilder();
+        boolean optionArgument = false;
+        boolean anyTask = false;
+
+        for (String token : tasks.trim().split("\\s+")) {
+            if (token.length() == 0)
+                continue;
+
+            if (optionArgument || token.startsWith("-") || token.contains(":")) {
+                append(result, token);
+                anyTask |= !optionArgument && !token.startsWith("-");
+                // arguments stay as they are, excluded tasks unqualified so they are excluded everywhere
+                optionArgument = !optionArgument && OPTIONS_WITH_ARGUMENT.contains(token);
+                continue;
+            }
+
+            if (!known.contains(token))
+                return null; // only Gradle can tell what it matches
+
+            for (String projectPath : projectPaths) {
+                Collection<String> names = tasksByPath.get(projectPath);
+
+                if (names != null && names.contains(token)) {
+                    append(result, projectPath + ":" + token);
+                    anyTask = true;
+                }
+            }
+        }
+
+        return anyTask ? result.toString() : null;
+    }
+
+    private static void append(StringBuilder builder, String token) {
+        if (builder.length() > 0)
+            builder.append(' ');
+        builder.append(token);
+    }
+}
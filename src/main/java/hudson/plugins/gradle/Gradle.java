@@ -2,6 +2,9 @@ package hudson.plugins.gradle;
 
 import hudson.*;
 import hudson.model.*;
+import hudson.plugins.gradle.model.Dependency;
+import hudson.plugins.gradle.model.GradleDependencyInfo;
+import hudson.scm.ChangeLogSet;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.tools.ToolInstallation;
@@ -10,9 +13,8 @@ import org.jenkinsci.lib.dryrun.DryRun;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -20,6 +22,8 @@ import java.util.Set;
  */
 public class Gradle extends Builder implements DryRun {
 
+    private static final int MAX_CHANGE_SETS = 20;
+
     private final String description;
     private final String switches;
     private final String tasks;
@@ -31,11 +35,25 @@ public class Gradle extends Builder implements DryRun {
     private final boolean fromRootBuildScriptDir;
     private final boolean useWorkspaceAsHome;
     private final boolean passAsProperties;
+    private final boolean useDaemon;
+    private final String daemonMaxHeap;
+    private final boolean useToolingApi;
+    private final boolean useSharedNodeHome;
+    private final boolean onlyAffectedSubprojects;
+    private final String testShards;
+    private final String testShardIndex;
+    private final boolean adaptiveResources;
+    private final boolean memoryAdmission;
+    private final boolean skipUnchangedInputs;
+    private final boolean useBuildCache;
 
     @DataBoundConstructor
     public Gradle(String description, String switches, String tasks, String rootBuildScriptDir, String buildFile,
                   String gradleName, boolean useWrapper, boolean makeExecutable, boolean fromRootBuildScriptDir,
-                  boolean useWorkspaceAsHome, boolean passAsProperties) {
+                  boolean useWorkspaceAsHome, boolean passAsProperties, boolean useDaemon, String daemonMaxHeap,
+                  boolean useToolingApi, boolean useSharedNodeHome, boolean onlyAffectedSubprojects,
+                  String testShards, String testShardIndex, boolean adaptiveResources,
+                  boolean memoryAdmission, boolean skipUnchangedInputs, boolean useBuildCache) {
         this.description = description;
         this.switches = switches;
         this.tasks = tasks;
@@ -47,6 +65,17 @@ public class Gradle extends Builder implements DryRun {
         this.fromRootBuildScriptDir = fromRootBuildScriptDir;
         this.useWorkspaceAsHome = useWorkspaceAsHome;
         this.passAsProperties = passAsProperties;
+        this.useDaemon = useDaemon;
+        this.daemonMaxHeap = daemonMaxHeap;
+        this.useToolingApi = useToolingApi;
+        this.useSharedNodeHome = useSharedNodeHome;
+        this.onlyAffectedSubprojects = onlyAffectedSubprojects;
+        this.testShards = testShards;
+        this.testShardIndex = testShardIndex;
+        this.adaptiveResources = adaptiveResources;
+        this.memoryAdmission = memoryAdmission;
+        this.skipUnchangedInputs = skipUnchangedInputs;
+        this.useBuildCache = useBuildCache;
     }
 
     @SuppressWarnings("unused")
@@ -104,6 +133,61 @@ public class Gradle extends Builder implements DryRun {
         return passAsProperties;
     }
 
+    @SuppressWarnings("unused")
+    public boolean isUseDaemon() {
+        return useDaemon;
+    }
+
+    @SuppressWarnings("unused")
+    public String getDaemonMaxHeap() {
+        return daemonMaxHeap;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isUseToolingApi() {
+        return useToolingApi;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isUseSharedNodeHome() {
+        return useSharedNodeHome;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isOnlyAffectedSubprojects() {
+        return onlyAffectedSubprojects;
+    }
+
+    @SuppressWarnings("unused")
+    public String getTestShards() {
+        return testShards;
+    }
+
+    @SuppressWarnings("unused")
+    public String getTestShardIndex() {
+        return testShardIndex;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isAdaptiveResources() {
+        return adaptiveResources;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isMemoryAdmission() {
+        return memoryAdmission;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isSkipUnchangedInputs() {
+        return skipUnchangedInputs;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isUseBuildCache() {
+        return useBuildCache;
+    }
+
     public GradleInstallation getGradle() {
         for (GradleInstallation i : getDescriptor().getInstallations()) {
             if (gradleName != null && i.getName().equals(gradleName)) {
@@ -161,6 +245,10 @@ public class Gradle extends Builder implements DryRun {
         normalizedTasks = Util.replaceMacro(normalizedTasks, env);
         normalizedTasks = Util.replaceMacro(normalizedTasks, build.getBuildVariables());
 
+        if (onlyAffectedSubprojects) {
+            normalizedTasks = narrowToAffectedSubprojects(build, normalizedTasks, gradleLogger);
+        }
+
         FilePath normalizedRootBuildScriptDir = null;
         if (rootBuildScriptDir != null && rootBuildScriptDir.trim().length() != 0) {
             String rootBuildScriptNormalized = rootBuildScriptDir.trim().replaceAll("[\t\r\n]+", " ");
@@ -169,8 +257,43 @@ public class Gradle extends Builder implements DryRun {
             normalizedRootBuildScriptDir = new FilePath(build.getModuleRoot(), rootBuildScriptNormalized);
         }
 
+        String buildFileNormalized = null;
+        if (buildFile != null && buildFile.trim().length() != 0) {
+            buildFileNormalized = Util.replaceMacro(buildFile.trim(), env);
+        }
+
+        FilePath rootLauncher;
+        if (normalizedRootBuildScriptDir != null) {
+            rootLauncher = normalizedRootBuildScriptDir;
+        } else {
+            rootLauncher = build.getWorkspace();
+        }
+
+        //Not call from an Executor
+        if (rootLauncher == null) {
+            rootLauncher = build.getProject().getSomeWorkspace();
+        }
+
+        // decided before anything is set up for Gradle, a user home in the workspace isn't an input
+        String fingerprintedStep = null;
+        String fingerprintedUserHome = useWorkspaceAsHome && build.getWorkspace() != null
+                ? build.getWorkspace().getRemote() : env.get("GRADLE_USER_HOME");
+        if (skipUnchangedInputs && !dryRun && build.getWorkspace() != null) {
+            GradleInstallation installation = useWrapper ? null : getGradle();
+            fingerprintedStep = GradleInputFingerprinter.describeStep(normalizedSwitches, normalizedTasks,
+                    buildFileNormalized, rootBuildScriptDir, gradleName,
+                    installation != null ? installation.forEnvironment(env).getHome() : null, useWrapper,
+                    env.get("JAVA_HOME"), useToolingApi);
+            if (isInputUnchanged(build, fingerprintedStep, fingerprintedUserHome, gradleLogger)) {
+                recordBuildFile(build, rootLauncher, normalizedRootBuildScriptDir, buildFileNormalized);
+                return true;
+            }
+        }
+
         //Build arguments
         ArgumentListBuilder args = new ArgumentListBuilder();
+        String gradleHome = null;
+        FilePath gradleWrapper = null;
         if (useWrapper) {
             //We are using the wrapper and don't care about the installed gradle versions
             String execName = (launcher.isUnix()) ? GradleInstallation.UNIX_GRADLE_WRAPPER_COMMAND : GradleInstallation.WINDOWS_GRADLE_WRAPPER_COMMAND;
@@ -208,10 +331,12 @@ public class Gradle extends Builder implements DryRun {
                 gradleWrapperFile.chmod(0744);
             }
             args.add(gradleWrapperFile.getRemote());
+            gradleWrapper = gradleWrapperFile;
         } else {
             //Look for a gradle installation
             GradleInstallation ai = getGradle();
             if (ai != null) {
+                GradleInstallationPrewarmer.awaitPrewarm(Computer.currentComputer().getNode(), listener);
                 ai = ai.forNode(Computer.currentComputer().getNode(), listener);
                 ai = ai.forEnvironment(env);
                 String exe = ai.getExecutable(launcher);
@@ -219,55 +344,186 @@ public class Gradle extends Builder implements DryRun {
                     gradleLogger.error("Can't retrieve the Gradle executable.");
                     return false;
                 }
-                env.put("GRADLE_HOME", ai.getHome());
+                gradleHome = ai.getHome();
+                env.put("GRADLE_HOME", gradleHome);
                 args.add(exe);
             } else {
                 //No gradle installation either, fall back to simple command
                 args.add(launcher.isUnix() ? GradleInstallation.UNIX_GRADLE_COMMAND : GradleInstallation.WINDOWS_GRADLE_COMMAND);
             }
         }
-        
+        String executable = args.toList().get(0);
+
+        if (useWorkspaceAsHome) {
+            // Make user home relative to the workspace, so that files aren't shared between builds
+            env.put("GRADLE_USER_HOME", build.getWorkspace().getRemote());
+        }
+
+        GradleSharedUserHome sharedUserHome = null;
+        if (useSharedNodeHome && !useWorkspaceAsHome) {
+            // Executor specific user home backed by a read-only dependency cache shared by the node
+            sharedUserHome = GradleSharedUserHome.forCurrentExecutor();
+            if (sharedUserHome != null) {
+                FilePath gradleInstallation = gradleHome != null ? new FilePath(launcher.getChannel(), gradleHome) : null;
+                sharedUserHome.setUp(env, GradleSharedUserHome.getGradleVersion(gradleInstallation, gradleWrapper));
+            }
+        }
+
+        // the JVM arguments the build configures itself, a heap chosen here is merged into them
+        Properties gradleProperties = new Properties();
+        FilePath projectDir = normalizedRootBuildScriptDir != null ? normalizedRootBuildScriptDir : build.getWorkspace();
+        if ((useDaemon || adaptiveResources) && projectDir != null) {
+            gradleProperties = GradleResourceTuner.readGradleProperties(projectDir, env.get("GRADLE_USER_HOME"));
+        }
        
         Set<String> sensitiveVars = build.getSensitiveBuildVariables();
         args.addKeyValuePairs(passPropertyOption(), fixParameters(build.getBuildVariables()), sensitiveVars);
+
+        String jvmArgs = null;
+        if (useDaemon) {
+            args.add("--daemon");
+            args.add("-Dorg.gradle.daemon.idletimeout=" + TimeUnit.MINUTES.toMillis(GradleDaemonPool.MAX_IDLE_MINUTES));
+
+            String heap = Util.fixEmptyAndTrim(daemonMaxHeap);
+            if (heap != null) {
+                jvmArgs = "-Xmx" + Util.replaceMacro(heap, env);
+            }
+        }
+
         args.addTokenized(normalizedSwitches);
         args.addTokenized(normalizedTasks);
-        if (buildFile != null && buildFile.trim().length() != 0) {
-            String buildFileNormalized = Util.replaceMacro(buildFile.trim(), env);
+        if (buildFileNormalized != null) {
             args.add("-b");
             args.add(buildFileNormalized);
         }
 
-        if (useWorkspaceAsHome) {
-            // Make user home relative to the workspace, so that files aren't shared between builds
-            env.put("GRADLE_USER_HOME", build.getWorkspace().getRemote());
+        // options that go to the command line as well as to the Tooling API
+        List<String> extraArgs = new ArrayList<String>();
+
+        GradleResourceAction resources = null;
+        if (adaptiveResources) {
+            // a pooled daemon keeps the heap it was started with, so only the workers adapt then
+            resources = GradleResourceTuner.tune(Computer.currentComputer(), launcher.getChannel(),
+                    normalizedSwitches + " " + normalizedTasks, gradleProperties, !useDaemon);
+            if (resources.getMaxWorkers() > 0) {
+                extraArgs.add("--max-workers=" + resources.getMaxWorkers());
+            }
+            if (resources.getMaxHeapMb() > 0) {
+                jvmArgs = "-Xmx" + resources.getMaxHeapMb() + "m";
+            }
+            build.addAction(resources);
+            gradleLogger.info("Adapted to the node: " + resources);
+        }
+
+        if (jvmArgs != null) {
+            // the property on the command line replaces the one of gradle.properties as a whole
+            jvmArgs = GradleResourceTuner.mergeHeap(gradleProperties.getProperty("org.gradle.jvmargs"), jvmArgs);
+            args.add("-Dorg.gradle.jvmargs=" + jvmArgs);
+        }
+
+        GradleTestShard testShard = getTestShard(build, env);
+        if (testShard != null) {
+            TestShardPlanner planner = new TestShardPlanner(GradleTestTimingsAction.getDurations(build), testShard.getCount());
+            extraArgs.add("--init-script");
+            extraArgs.add(testShard.write(build.getWorkspace(), planner).getRemote());
+
+            int shard = testShard.getIndex();
+            gradleLogger.info("Running test shard " + shard + " of " + testShard.getCount() + ": "
+                    + planner.getClasses(shard).size() + " test classes with a known duration of "
+                    + Util.getTimeSpanString(planner.getLoad(shard)) + ", new classes are assigned by name.");
+        }
+        GradleMemoryFootprint memoryFootprint = null;
+        if (memoryAdmission) {
+            memoryFootprint = new GradleMemoryFootprint(build.getWorkspace());
+            extraArgs.add("--init-script");
+            extraArgs.add(memoryFootprint.writeInitScript().getRemote());
+        }
+        if (useBuildCache) {
+            GradleBuildCache buildCache = GradleBuildCache.ENABLED ? GradleBuildCache.get() : null;
+            String cacheUrl = buildCache != null ? buildCache.getCacheUrl() : null;
+            if (cacheUrl != null) {
+                // access is revoked when the build completes
+                extraArgs.add("--build-cache");
+                extraArgs.add("--init-script");
+                extraArgs.add(buildCache.register(build, cacheUrl, build.getWorkspace()).getRemote());
+            } else {
+                gradleLogger.info("The Gradle build cache of Jenkins is disabled or the Jenkins URL isn't configured, building without it.");
+            }
+        }
+
+        for (String extraArg : extraArgs) {
+            args.add(extraArg);
+        }
+
+        GradleDaemonPool.DaemonKey daemonKey = null;
+        FilePath daemonRegistry = null;
+        if (useDaemon) {
+            // pooled daemons get a registry of their own, so stopping them leaves other daemons alone
+            Node node = Computer.currentComputer().getNode();
+            daemonKey = GradleDaemonPool.key(node, executable, jvmArgs, env);
+            daemonRegistry = GradleDaemonPool.getRegistryBase(node, daemonKey);
+            if (daemonRegistry != null) {
+                args.add("-Dorg.gradle.daemon.registry.base=" + daemonRegistry.getRemote());
+            }
         }
 
         if (!launcher.isUnix()) {
             args = args.toWindowsCommand();
         }
 
-        FilePath rootLauncher;
-        if (normalizedRootBuildScriptDir != null) {
-            rootLauncher = normalizedRootBuildScriptDir;
-        } else {
-            rootLauncher = build.getWorkspace();
-        }
+        recordBuildFile(build, rootLauncher, normalizedRootBuildScriptDir, buildFileNormalized);
 
-        //Not call from an Executor
-        if (rootLauncher == null) {
-            rootLauncher = build.getProject().getSomeWorkspace();
+        long gradleStarted = System.currentTimeMillis();
+
+        if (useToolingApi) {
+            GradleMemoryBudget.Lease memoryLease = acquireMemory(build, launcher, listener);
+            boolean success;
+            try {
+                success = performWithToolingApi(build, listener, rootLauncher, gradleHome, env, jvmArgs,
+                        normalizedSwitches, normalizedTasks, buildFileNormalized, extraArgs);
+            } finally {
+                releaseMemory(memoryLease, memoryFootprint);
+            }
+            if (resources != null) {
+                resources.setGradleMillis(System.currentTimeMillis() - gradleStarted);
+            }
+            if (success && sharedUserHome != null) {
+                sharedUserHome.seedIfNecessary(listener);
+            }
+            if (success && fingerprintedStep != null) {
+                recordOutputs(build, fingerprintedStep, fingerprintedUserHome);
+            }
+            recordTestTimings(build, listener);
+            return success;
         }
 
+        GradleMemoryBudget.Lease memoryLease = acquireMemory(build, launcher, listener);
+        GradleDaemonPool.Daemon daemon = null;
+        boolean daemonHealthy = false;
+
         try {
             GradleConsoleAnnotator gca = new GradleConsoleAnnotator(
                     listener.getLogger(), build.getCharset());
             int r;
             try {
+                // inside the try, so the memory lease is released if the build is aborted while stopping daemons
+                if (daemonRegistry != null) {
+                    daemon = GradleDaemonPool.get().acquire(daemonKey, daemonRegistry, rootLauncher, env, launcher, listener);
+                }
+
                 r = launcher.launch().cmds(args).envs(env).stdout(gca)
                         .pwd(rootLauncher).join();
+                daemonHealthy = true;
+                if (resources != null) {
+                    resources.setGradleMillis(System.currentTimeMillis() - gradleStarted);
+                }
             } finally {
                 gca.forceEol();
+
+                if (daemon != null)
+                    GradleDaemonPool.get().release(daemon, daemonHealthy);
+
+                releaseMemory(memoryLease, memoryFootprint);
             }
             boolean success = r == 0;
             // if the build is successful then set it as success otherwise as a failure.
@@ -275,6 +531,13 @@ public class Gradle extends Builder implements DryRun {
             if (!success) {
                 build.setResult(Result.FAILURE);
             }
+            if (success && sharedUserHome != null) {
+                sharedUserHome.seedIfNecessary(listener);
+            }
+            if (success && fingerprintedStep != null) {
+                recordOutputs(build, fingerprintedStep, fingerprintedUserHome);
+            }
+            recordTestTimings(build, listener);
             return success;
         } catch (IOException e) {
             Util.displayIOException(e, listener);
@@ -284,6 +547,271 @@ public class Gradle extends Builder implements DryRun {
         }
     }
 
+    /**
+     * Qualifies the tasks with the subprojects affected by the changes since the last successful build, as far as
+     * the dependency info recorded by the {@link GradleBuildTrigger} of the job allows.
+     */
+    private String narrowToAffectedSubprojects(AbstractBuild<?, ?> build, String tasks, GradleLogger gradleLogger) {
+        GradleBuildTrigger trigger = GradleBuildTrigger.getGradleBuildTrigger(build.getProject());
+        List<GradleDependencyInfo> infos = trigger != null ? trigger.getGradleDependencyInfo(build.getProject()) : null;
+
+        if (infos == null || infos.size() != 1 || !infos.get(0).isMultiProject() || build.getWorkspace() == null) {
+            gradleLogger.info("No multi-project structure known yet, building all projects.");
+            return tasks;
+        }
+
+        List<String> changedPaths = getChangesSinceLastSuccess(build);
+        AffectedSubprojects subprojects = new AffectedSubprojects(infos.get(0));
+        List<String> affected = changedPaths != null
+                ? subprojects.getAffected(build.getWorkspace().getRemote(), changedPaths)
+                : null;
+
+        if (affected == null) {
+            gradleLogger.info("Changes affect the whole build, building all projects.");
+            return tasks;
+        }
+
+        String narrowed = subprojects.rewriteTasks(tasks, affected);
+        if (narrowed == null) {
+            gradleLogger.info("The tasks can't be narrowed to the affected subprojects, building all projects.");
+            return tasks;
+        }
+
+        gradleLogger.info("Changes affect " + affected.size() + " subprojects, running " + narrowed);
+        return narrowed;
+    }
+
+    /**
+     * @return the paths changed by this build and the unsuccessful builds before it, or null if there are too many
+     * of them to go back to the last successful build
+     */
+    private List<String> getChangesSinceLastSuccess(AbstractBuild<?, ?> build) {
+        List<String> changedPaths = new ArrayList<String>();
+        AbstractBuild<?, ?> b = build;
+
+        for (int i = 0; i < MAX_CHANGE_SETS; i++) {
+            for (ChangeLogSet.Entry entry : b.getChangeSet()) {
+                changedPaths.addAll(entry.getAffectedPaths());
+            }
+
+            b = b.getPreviousBuild();
+
+            if (b == null || (b.getResult() != null && !b.getResult().isWorseThan(Result.SUCCESS)))
+                return changedPaths;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the test shard this build runs, or null if the tests aren't sharded
+     */
+    private GradleTestShard getTestShard(AbstractBuild<?, ?> build, EnvVars env) throws AbortException {
+        String count = Util.fixEmptyAndTrim(testShards);
+        if (count == null || build.getWorkspace() == null) {
+            return null;
+        }
+
+        String index = Util.fixNull(testShardIndex);
+        count = Util.replaceMacro(Util.replaceMacro(count, env), build.getBuildVariables()).trim();
+        index = Util.replaceMacro(Util.replaceMacro(index, env), build.getBuildVariables()).trim();
+
+        try {
+            int n = Integer.parseInt(count);
+            return n > 1 ? new GradleTestShard(Integer.parseInt(index), n) : null;
+        } catch (IllegalArgumentException e) {
+            throw new AbortException("Invalid test shard '" + index + "' of '" + count + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fingerprints the inputs of the step and checks them against the last successful build.
+     *
+     * @return true if they match, so running Gradle again can be skipped
+     */
+    private boolean isInputUnchanged(AbstractBuild<?, ?> build, String step, String userHome, GradleLogger gradleLogger)
+            throws IOException, InterruptedException {
+        String fingerprint = build.getWorkspace().act(new GradleInputFingerprinter(getExternalInputs(build, step), userHome));
+
+        GradleInputFingerprintAction action = build.getAction(GradleInputFingerprintAction.class);
+        if (action == null) {
+            action = new GradleInputFingerprintAction();
+            build.addAction(action);
+        }
+        action.setFingerprint(step, fingerprint);
+
+        AbstractBuild<?, ?> previous = build.getPreviousSuccessfulBuild();
+        GradleInputFingerprintAction previousAction = previous != null ? previous.getAction(GradleInputFingerprintAction.class) : null;
+
+        if (previousAction == null || !fingerprint.equals(previousAction.getFingerprint(step))) {
+            return false;
+        }
+
+        // point to the build that actually ran Gradle
+        int reused = previousAction.getReusedBuild(step) >= 0 ? previousAction.getReusedBuild(step) : previous.getNumber();
+
+        // a new or wiped workspace lacks the outputs later steps and publishers expect
+        AbstractBuild<?, ?> reusedBuild = build.getProject().getBuildByNumber(reused);
+        GradleInputFingerprintAction reusedAction = reusedBuild != null ? reusedBuild.getAction(GradleInputFingerprintAction.class) : null;
+        List<String> outputs = reusedAction != null ? reusedAction.getOutputs(step) : null;
+        if (outputs == null || !exist(build.getWorkspace(), outputs)) {
+            gradleLogger.info("Inputs unchanged since build #" + previous.getNumber() + ", but the outputs of build #"
+                    + reused + " aren't in the workspace, running Gradle.");
+            return false;
+        }
+
+        action.setReused(step, reused);
+        gradleLogger.info("Inputs unchanged since build #" + previous.getNumber()
+                + ", skipping Gradle and reusing the result of build #" + reused + ".");
+        return true;
+    }
+
+    private static boolean exist(FilePath workspace, List<String> dirs) throws IOException, InterruptedException {
+        for (String dir : dirs) {
+            if (!workspace.child(dir).isDirectory()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the output directories the step left, so later builds only skip it while they are still there.
+     */
+    private void recordBuildFile(AbstractBuild<?, ?> build, FilePath rootLauncher, FilePath normalizedRootBuildScriptDir,
+                                 String buildFileNormalized) {
+        if (rootLauncher != null) {
+            FilePath resolvedBuildFile = buildFileNormalized != null
+                    ? new FilePath(rootLauncher, buildFileNormalized) : rootLauncher.child(GradleBuildTrigger.GRADLE_FILE);
+            GradleBuildFileAction.record(build, this, new GradleBuildFileAction.Location(
+                    normalizedRootBuildScriptDir != null ? normalizedRootBuildScriptDir.getRemote() : null,
+                    buildFileNormalized, resolvedBuildFile.getRemote()));
+        }
+    }
+
+    private void recordOutputs(AbstractBuild<?, ?> build, String step, String userHome)
+            throws IOException, InterruptedException {
+        GradleInputFingerprintAction action = build.getAction(GradleInputFingerprintAction.class);
+        if (action != null) {
+            action.setOutputs(step, build.getWorkspace().act(new GradleInputFingerprinter.Outputs(userHome)));
+        }
+    }
+
+    /**
+     * @return the inputs of the step from outside the workspace: its configuration, the build parameters, the
+     * resolved versions of its dependencies and the last successful builds of the upstream jobs, which may have
+     * republished a snapshot under the same version
+     */
+    private String getExternalInputs(AbstractBuild<?, ?> build, String step) {
+        StringBuilder inputs = new StringBuilder(step);
+
+        for (Map.Entry<String, String> variable : new TreeMap<String, String>(build.getBuildVariables()).entrySet()) {
+            inputs.append('\n').append(variable.getKey()).append('=').append(variable.getValue());
+        }
+
+        GradleBuildTrigger trigger = GradleBuildTrigger.getGradleBuildTrigger(build.getProject());
+        List<GradleDependencyInfo> infos = trigger != null ? trigger.getGradleDependencyInfo(build.getProject()) : null;
+        if (infos != null) {
+            Set<String> dependencies = new TreeSet<String>();
+            for (GradleDependencyInfo info : infos) {
+                for (Dependency dependency : info.getAllDependencies()) {
+                    dependencies.add(dependency.getGroup() + ":" + dependency.getName() + ":" + dependency.getVersion());
+                }
+            }
+            for (String dependency : dependencies) {
+                inputs.append('\n').append(dependency);
+            }
+        }
+
+        Set<String> upstreamBuilds = new TreeSet<String>();
+        for (AbstractProject<?, ?> upstream : build.getProject().getUpstreamProjects()) {
+            Run<?, ?> lastSuccessful = upstream.getLastSuccessfulBuild();
+            upstreamBuilds.add(upstream.getFullName() + "#" + (lastSuccessful != null ? lastSuccessful.getNumber() : 0));
+        }
+        for (String upstreamBuild : upstreamBuilds) {
+            inputs.append('\n').append(upstreamBuild);
+        }
+
+        return inputs.toString();
+    }
+
+    /**
+     * Reserves the estimated memory footprint of the build on the node, if memory admission is enabled.
+     */
+    private GradleMemoryBudget.Lease acquireMemory(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws IOException, InterruptedException {
+        if (!memoryAdmission) {
+            return null;
+        }
+
+        return GradleMemoryBudget.get().acquire(build, Computer.currentComputer().getNode().getNodeName(),
+                launcher.getChannel(), listener);
+    }
+
+    private void releaseMemory(GradleMemoryBudget.Lease lease, GradleMemoryFootprint footprint)
+            throws InterruptedException {
+        if (lease == null) {
+            return;
+        }
+
+        GradleMemoryBudget.get().release(lease);
+
+        try {
+            lease.getAction().setFootprintMb(footprint.read());
+        } catch (IOException e) {
+            // no footprint, the estimate of the next build falls back to earlier ones
+        }
+    }
+
+    /**
+     * Harvests the test durations of the build for planning the shards of later builds.
+     */
+    private void recordTestTimings(AbstractBuild<?, ?> build, BuildListener listener) throws InterruptedException {
+        if (Util.fixEmptyAndTrim(testShards) == null || build.getWorkspace() == null) {
+            return;
+        }
+
+        try {
+            GradleTestTimings.merge(build.getProject(), build.getWorkspace().act(new GradleTestTimings.Collector()));
+        } catch (IOException e) {
+            Util.displayIOException(e, listener);
+            e.printStackTrace(listener.error("Could not record the test durations"));
+        }
+    }
+
+    private boolean performWithToolingApi(AbstractBuild<?, ?> build, BuildListener listener, FilePath projectDir,
+                                          String gradleHome, EnvVars env, String jvmArgs, String switches,
+                                          String tasks, String buildFile, List<String> extraArgs)
+            throws InterruptedException {
+        List<String> arguments = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : build.getBuildVariables().entrySet()) {
+            arguments.add(passPropertyOption() + entry.getKey() + "=" + entry.getValue());
+        }
+        arguments.addAll(Arrays.asList(Util.tokenize(switches)));
+        if (buildFile != null) {
+            arguments.add("-b");
+            arguments.add(buildFile);
+        }
+        arguments.addAll(extraArgs);
+
+        List<String> jvmArguments = jvmArgs != null ? Arrays.asList(Util.tokenize(jvmArgs)) : Collections.<String>emptyList();
+
+        GradleToolingApiLauncher toolingApiLauncher = new GradleToolingApiLauncher(listener, gradleHome,
+                env.get("GRADLE_USER_HOME"), Util.fixEmpty(env.get("JAVA_HOME")), jvmArguments, arguments,
+                Arrays.asList(Util.tokenize(tasks)));
+
+        try {
+            boolean success = projectDir.act(toolingApiLauncher);
+            build.setResult(success ? Result.SUCCESS : Result.FAILURE);
+            return success;
+        } catch (IOException e) {
+            Util.displayIOException(e, listener);
+            e.printStackTrace(listener.fatalError("Tooling API execution failed"));
+            build.setResult(Result.FAILURE);
+            return false;
+        }
+    }
+
     private String passPropertyOption() {
         return passAsProperties ? "-P" : "-D";
     }
@@ -0,0 +1,260 @@
+package hudson.plugins.gradle;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+import hudson.model.UnprotectedRootAction;
+import hudson.model.listeners.RunListener;
+import org.apache.commons.codec.binary.Base64;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Gradle HTTP build cache served by Jenkins at <tt>/gradle-cache/</tt>, backed by a {@link GradleBuildCacheStore}
+ * in <tt>$JENKINS_HOME/gradle-build-cache</tt>.
+ *
+ * Only running builds that enabled the cache in their Gradle build step can use it: each of them authenticates with
+ * its own user name and a password derived from it with a key generated at startup, and the hits, misses and uploads
+ * are counted per build.
+ */
+@Extension
+public class GradleBuildCache implements UnprotectedRootAction {
+
+    private static final Logger LOGGER = Logger.getLogger(GradleBuildCache.class.getName());
+
+    public static boolean ENABLED = !Boolean.getBoolean(GradleBuildCache.class.getName() + ".disabled");
+
+    public static int MAX_SIZE_MB = Integer.getInteger(GradleBuildCache.class.getName() + ".maxSizeMb", 10240);
+
+    /** URL of the cache handed to builds, for when Jenkins isn't reachable from agents under its root URL */
+    public static String URL = System.getProperty(GradleBuildCache.class.getName() + ".url");
+
+    public static final String URL_NAME = "gradle-cache";
+
+    private static final String INIT_SCRIPT =
+            "gradle.settingsEvaluated { settings ->\n" +
+            "    settings.buildCache {\n" +
+            "        remote(org.gradle.caching.http.HttpBuildCache) {\n" +
+            "            url = @URL@\n" +
+            "            push = true\n" +
+            "            if (url.toString().startsWith('http:') && delegate.hasProperty('allowInsecureProtocol'))\n" +
+            "                allowInsecureProtocol = true\n" +
+            "            credentials {\n" +
+            "                username = @USER@\n" +
+            "                password = @PASSWORD@\n" +
+            "            }\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+
+    private final byte[] key;
+    private final Map<String, GradleBuildCacheAction> builds = new ConcurrentHashMap<String, GradleBuildCacheAction>();
+    private volatile GradleBuildCacheStore store;
+
+    public GradleBuildCache() {
+        key = new byte[32];
+        new SecureRandom().nextBytes(key);
+    }
+
+    public static GradleBuildCache get() {
+        return Hudson.getInstance().getExtensionList(UnprotectedRootAction.class).get(GradleBuildCache.class);
+    }
+
+    private GradleBuildCacheStore getStore() {
+        if (store == null) {
+            synchronized (this) {
+                if (store == null) {
+                    store = new GradleBuildCacheStore(new File(Hudson.getInstance().getRootDir(), "gradle-build-cache"),
+                            MAX_SIZE_MB * 1024L * 1024L);
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * @return the URL builds use, or null if it is unknown
+     */
+    public String getCacheUrl() {
+        if (URL != null)
+            return URL;
+
+        String rootUrl = Hudson.getInstance().getRootUrl();
+        return rootUrl != null ? rootUrl + URL_NAME + "/" : null;
+    }
+
+    /**
+     * Lets the build use the cache until it completes, and writes the init script configuring the cache.
+     *
+     * @return the init script to pass with {@code --init-script}
+     */
+    public FilePath register(AbstractBuild<?, ?> build, String url, FilePath workspace)
+            throws IOException, InterruptedException {
+        String user = getUser(build);
+        GradleBuildCacheAction action = build.getAction(GradleBuildCacheAction.class);
+
+        if (action == null) {
+            action = new GradleBuildCacheAction();
+            action.started(getStore().getEvictions());
+            build.addAction(action);
+        }
+
+        builds.put(user, action);
+
+        FilePath dir = workspace.child(".gradle-build-cache");
+        dir.mkdirs();
+
+        FilePath initScript = dir.child("build-cache.gradle");
+        initScript.write(INIT_SCRIPT.replace("@URL@", quote(url)).replace("@USER@", quote(user))
+                .replace("@PASSWORD@", quote(getPassword(user))), "UTF-8");
+        return initScript;
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
+    void unregister(AbstractBuild<?, ?> build) {
+        GradleBuildCacheAction action = builds.remove(getUser(build));
+
+        if (action != null)
+            action.finished(getStore().getEvictions());
+    }
+
+    private static String getUser(AbstractBuild<?, ?> build) {
+        return build.getProject().getFullName() + "#" + build.getNumber();
+    }
+
+    private String getPassword(String user) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return Util.toHexString(mac.doFinal(user.getBytes("UTF-8")));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        GradleBuildCacheAction stats = authenticate(req);
+        if (stats == null) {
+            rsp.setHeader("WWW-Authenticate", "Basic realm=\"Gradle build cache\"");
+            rsp.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        String key = req.getRestOfPath();
+        if (key.startsWith("/"))
+            key = key.substring(1);
+
+        if (!GradleBuildCacheStore.isValidKey(key)) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String method = req.getMethod();
+
+        if ("GET".equals(method)) {
+            rsp.setContentType("application/octet-stream");
+
+            if (getStore().get(key, rsp.getOutputStream())) {
+                stats.hit();
+            } else {
+                stats.miss();
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        } else if ("HEAD".equals(method)) {
+            rsp.setStatus(getStore().contains(key) ? HttpServletResponse.SC_OK : HttpServletResponse.SC_NOT_FOUND);
+        } else if ("PUT".equals(method)) {
+            if (req.getContentLength() > getStore().getMaxBytes()) {
+                rsp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                return;
+            }
+
+            try {
+                if (getStore().put(key, req.getInputStream())) {
+                    stats.stored();
+                    rsp.setStatus(HttpServletResponse.SC_CREATED);
+                } else {
+                    rsp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not store Gradle build cache entry " + key, e);
+                rsp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        } else {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+        }
+    }
+
+    /**
+     * @return the statistics of the registered build the request comes from, or null if it doesn't come from one
+     */
+    private GradleBuildCacheAction authenticate(StaplerRequest req) throws IOException {
+        String authorization = req.getHeader("Authorization");
+
+        if (authorization == null || !authorization.startsWith("Basic "))
+            return null;
+
+        String credentials = new String(Base64.decodeBase64(authorization.substring(6).trim().getBytes("US-ASCII")), "UTF-8");
+        int colon = credentials.lastIndexOf(':');
+
+        if (colon < 0)
+            return null;
+
+        String user = credentials.substring(0, colon);
+        byte[] password = credentials.substring(colon + 1).getBytes("UTF-8");
+
+        if (!MessageDigest.isEqual(getPassword(user).getBytes("UTF-8"), password))
+            return null;
+
+        return builds.get(user);
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Gradle build cache";
+    }
+
+    public String getUrlName() {
+        return ENABLED ? URL_NAME : null;
+    }
+
+    /**
+     * Revokes the access of builds when they complete.
+     */
+    @Extension
+    public static class Revoker extends RunListener<AbstractBuild> {
+
+        public Revoker() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            GradleBuildCache cache = get();
+
+            if (cache != null)
+                cache.unregister(build);
+        }
+    }
+}
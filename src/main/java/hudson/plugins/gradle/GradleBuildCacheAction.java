@@ -0,0 +1,78 @@
+package hudson.plugins.gradle;
+
+import hudson.model.InvisibleAction;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests a build made to the {@link GradleBuildCache}.
+ */
+@ExportedBean
+public class GradleBuildCacheAction extends InvisibleAction {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private long evictions = -1;
+    private transient long evictionsBefore;
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void stored() {
+        stores.incrementAndGet();
+    }
+
+    @Exported
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Exported
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Exported
+    public long getStores() {
+        return stores.get();
+    }
+
+    /**
+     * @return the hit rate in percent, or -1 if nothing was requested
+     */
+    public int getHitRate() {
+        long requests = getHits() + getMisses();
+        return requests == 0 ? -1 : (int) (getHits() * 100 / requests);
+    }
+
+    /**
+     * @return the entries evicted from the cache while the build ran, to make room for its entries or those of
+     *         concurrent builds, or -1 if the build didn't complete yet
+     */
+    @Exported
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @param evictions the evictions of the cache since Jenkins started
+     */
+    void started(long evictions) {
+        evictionsBefore = evictions;
+    }
+
+    /**
+     * @param evictions the evictions of the cache since Jenkins started
+     */
+    void finished(long evictions) {
+        this.evictions = evictions - evictionsBefore;
+    }
+}
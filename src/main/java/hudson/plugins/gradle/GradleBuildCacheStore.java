@@ -0,0 +1,238 @@
+package hudson.plugins.gradle;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Disk store of Gradle build cache entries, one file per cache key, bounded in size by evicting the least recently
+ * used entries.
+ *
+ * Entries are guarded by a fixed set of read/write locks picked by the hash of the key, so reads and writes of
+ * different entries proceed in parallel. Uploads are written to a temporary file first and only the final rename
+ * happens under the lock.
+ */
+public class GradleBuildCacheStore {
+
+    private static final int STRIPES = 64;
+
+    private final File dir;
+    private final long maxBytes;
+    private final ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+
+    // key -> size, access ordered so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long bytes;
+    private long evictions;
+
+    public GradleBuildCacheStore(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+
+        load();
+    }
+
+    /**
+     * Indexes the entries left by an earlier run, oldest first.
+     */
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return a.lastModified() < b.lastModified() ? -1 : a.lastModified() > b.lastModified() ? 1 : 0;
+            }
+        });
+
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+            } else if (isValidKey(file.getName())) {
+                entries.put(file.getName(), file.length());
+                bytes += file.length();
+            }
+        }
+    }
+
+    public static boolean isValidKey(String key) {
+        if (key.length() == 0 || key.length() > 128)
+            return false;
+
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F'))
+                return false;
+        }
+
+        return true;
+    }
+
+    private ReadWriteLock lock(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    /**
+     * Copies the entry to the stream.
+     *
+     * @return false if there is no such entry
+     */
+    public boolean get(String key, OutputStream out) throws IOException {
+        synchronized (entries) {
+            if (entries.get(key) == null) // marks the entry as used
+                return false;
+        }
+
+        ReadWriteLock lock = lock(key);
+        lock.readLock().lock();
+
+        try {
+            InputStream in;
+            try {
+                in = new FileInputStream(new File(dir, key));
+            } catch (FileNotFoundException e) {
+                return false; // evicted in the meantime
+            }
+
+            try {
+                copy(in, out, Long.MAX_VALUE);
+            } finally {
+                in.close();
+            }
+
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String key) {
+        synchronized (entries) {
+            return entries.containsKey(key);
+        }
+    }
+
+    /**
+     * Stores an entry, replacing an existing one, and evicts entries until the store fits its size again.
+     *
+     * @return false if the entry is larger than the whole store, in which case nothing is stored
+     */
+    public boolean put(String key, InputStream in) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Could not create " + dir);
+
+        File tmp = File.createTempFile("entry-", ".tmp", dir);
+        long size;
+
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                // the length of a chunked upload isn't known up front
+                size = copy(in, out, maxBytes + 1);
+            } finally {
+                out.close();
+            }
+
+            if (size > maxBytes)
+                return false;
+
+            ReadWriteLock lock = lock(key);
+            lock.writeLock().lock();
+
+            try {
+                File file = new File(dir, key);
+                file.delete();
+
+                if (!tmp.renameTo(file))
+                    throw new IOException("Could not store " + file);
+
+                synchronized (entries) {
+                    Long previous = entries.put(key, size);
+                    bytes += size - (previous != null ? previous : 0);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            tmp.delete();
+        }
+
+        evict();
+        return true;
+    }
+
+    private void evict() {
+        while (true) {
+            String victim;
+
+            synchronized (entries) {
+                if (bytes <= maxBytes || entries.size() <= 1)
+                    return;
+
+                victim = entries.keySet().iterator().next();
+            }
+
+            ReadWriteLock lock = lock(victim);
+            lock.writeLock().lock();
+
+            try {
+                synchronized (entries) {
+                    Long size = entries.remove(victim);
+                    if (size == null)
+                        continue; // evicted by another thread
+
+                    bytes -= size;
+                    evictions++;
+                }
+
+                new File(dir, victim).delete();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the bytes copied, which stops once they reach {@code limit}
+     */
+    private static long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+
+        while (total < limit && (n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) > 0) {
+            out.write(buffer, 0, n);
+            total += n;
+        }
+
+        return total;
+    }
+
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getEvictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
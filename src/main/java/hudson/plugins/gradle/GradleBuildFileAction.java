@@ -0,0 +1,71 @@
+package hudson.plugins.gradle;
+
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+
+import java.util.*;
+
+/**
+ * Records where the Gradle build steps of a build found their build file, keyed by the root build script directory
+ * and build file configured in the step, so the dependency graph can locate it later without expanding the
+ * environment of the build again.
+ */
+public class GradleBuildFileAction extends InvisibleAction {
+
+    private final Map<String, Location> locations = new HashMap<String, Location>();
+
+    /**
+     * @return the location recorded for a step with the configuration of the given one, or null
+     */
+    public synchronized Location getLocation(Gradle step) {
+        return locations.get(key(step));
+    }
+
+    synchronized void setLocation(Gradle step, Location location) {
+        locations.put(key(step), location);
+    }
+
+    static void record(AbstractBuild<?, ?> build, Gradle step, Location location) {
+        GradleBuildFileAction action = build.getAction(GradleBuildFileAction.class);
+        if (action == null) {
+            action = new GradleBuildFileAction();
+            build.addAction(action);
+        }
+        action.setLocation(step, location);
+    }
+
+    private static String key(Gradle step) {
+        return Util.fixNull(step.getRootBuildScriptDir()).trim() + "\n" + Util.fixNull(step.getBuildFile()).trim();
+    }
+
+    public static final class Location {
+
+        private final String rootBuildScriptDir;
+        private final String buildFile;
+        private final String path;
+
+        /**
+         * @param rootBuildScriptDir the expanded root build script directory, or null if none is configured
+         * @param buildFile          the expanded build file, or null if none is configured
+         * @param path               the absolute path of the build file on the node that ran the build
+         */
+        public Location(String rootBuildScriptDir, String buildFile, String path) {
+            this.rootBuildScriptDir = rootBuildScriptDir;
+            this.buildFile = buildFile;
+            this.path = path;
+        }
+
+        public String getRootBuildScriptDir() {
+            return rootBuildScriptDir;
+        }
+
+        public String getBuildFile() {
+            return buildFile;
+        }
+
+        public String getPath() {
+            return path;
+        }
+    }
+}
@@ -2,13 +2,20 @@ package hudson.plugins.gradle;
 
 import hudson.*;
 import hudson.model.*;
+import hudson.model.listeners.RunListener;
 import hudson.plugins.gradle.model.Dependency;
 import hudson.plugins.gradle.model.DependencyStore;
+import hudson.plugins.gradle.model.GradleDependencyIndex;
 import hudson.plugins.gradle.model.GradleDependencyInfo;
-import hudson.plugins.gradle.model.GradleDependencyInfoFactory;
+import hudson.plugins.gradle.model.GradleDependencyInfoCache;
+import hudson.plugins.gradle.model.GradleDependencySummary;
+import hudson.remoting.VirtualChannel;
 import hudson.tasks.*;
+import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
 
 import java.io.*;
 import java.util.*;
@@ -19,12 +26,18 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
 
     public static final String GRADLE_FILE = "build.gradle";
     public static final String GRADLE_CACHE = "gradle-dependencies.ser";
+    public static final String GRADLE_INDEX = "gradle-dependency-index";
     private String tagName;
     private String templateProject;
     private static final Logger LOGGER = Logger.getLogger(GradleBuildTrigger.class.getName());
-    private transient List<GradleDependencyInfo> gradleDependencyInfo;
+    /** Number of recent builds searched for the build file location recorded by the step */
+    public static int RECORDED_BUILDS = Integer.getInteger(GradleBuildTrigger.class.getName() + ".recordedBuilds", 10);
+    /** Number of jobs whose full dependency models are kept in memory, beyond their summaries */
+    public static int CACHED_JOBS = Integer.getInteger(GradleBuildTrigger.class.getName() + ".cachedJobs", 100);
+    private static final GradleDependencyInfoCache DEPENDENCY_INFO_CACHE = new GradleDependencyInfoCache(CACHED_JOBS);
+    private static GradleDependencyIndex dependencyIndex;
+    private transient GradleDependencySummary dependencySummary;
     private DependencyStore dependencyStore;
-    private GradleDependencyInfoFactory factory;
 
     @DataBoundConstructor
     public GradleBuildTrigger(String tagName, String templateProject) {
@@ -45,36 +58,143 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
     public boolean perform(AbstractBuild<?,?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
         LOGGER.log(Level.INFO, "Building " + build.getFullDisplayName());
         rebuildGradleDependencyInfo(build);
+        recordPublicationHashes(build);
         LOGGER.log(Level.INFO, "Finished building " + build.getFullDisplayName());
         return true;
     }
 
-    private void rebuildGradleDependencyInfo(AbstractBuild<?,?> b) {
+    private void rebuildGradleDependencyInfo(AbstractBuild<?,?> b) throws InterruptedException {
 
         if (b == null)
             return;
 
-        boolean rebuild = rebuildDependencies(b);
-        LOGGER.log(Level.INFO, "Rebuilding (" + rebuild + ") " + b.getFullDisplayName());
+        if (GradlePreResolver.await(b)) {
+            LOGGER.log(Level.INFO, "Dependencies of " + b.getFullDisplayName() + " were resolved during the build");
+            return;
+        }
+
+        updateGradleDependencyInfo(b.getProject(), resolveGradleDependencyInfo(b.getProject()));
+    }
+
+    /**
+     * Replaces the dependency model of the project, rebuilding the dependency graph if it changed.
+     */
+    synchronized void updateGradleDependencyInfo(AbstractProject project, List<GradleDependencyInfo> newDependencyInfo) {
+        boolean rebuild = rebuildDependencies(project, newDependencyInfo);
+        LOGGER.log(Level.INFO, "Rebuilding (" + rebuild + ") " + project.getFullDisplayName());
 
         if (rebuild)
             triggerRebuild();
     }
 
+    private static DependencyGraph indexedGraph;
+    private static ReachabilityIndex<AbstractProject> reachabilityIndex;
+    private static ReachabilityIndex<AbstractProject> gradleReachabilityIndex;
+
+    static final WaveScheduler<AbstractProject> WAVE_SCHEDULER = new WaveScheduler<AbstractProject>();
+
+    /**
+     * Returns the reachability index of the current dependency graph, building it once per graph.
+     */
+    static synchronized ReachabilityIndex<AbstractProject> getReachabilityIndex() {
+        indexGraph();
+        return reachabilityIndex;
+    }
+
+    /**
+     * Returns the reachability index of the Gradle dependencies of the current dependency graph.
+     */
+    static synchronized ReachabilityIndex<AbstractProject> getGradleReachabilityIndex() {
+        indexGraph();
+        return gradleReachabilityIndex;
+    }
+
+    private static void indexGraph() {
+        final DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
+
+        if (graph == indexedGraph && reachabilityIndex != null)
+            return;
+
+        List<AbstractProject> projects = Jenkins.getInstance().getAllItems(AbstractProject.class);
+
+        reachabilityIndex = new ReachabilityIndex<AbstractProject>(projects,
+                new ReachabilityIndex.Edges<AbstractProject>() {
+                    public Collection<AbstractProject> getUpstream(AbstractProject node) {
+                        return graph.getUpstream(node);
+                    }
+                });
+
+        gradleReachabilityIndex = new ReachabilityIndex<AbstractProject>(projects,
+                new ReachabilityIndex.Edges<AbstractProject>() {
+                    public Collection<AbstractProject> getUpstream(AbstractProject node) {
+                        List<AbstractProject> upstream = new ArrayList<AbstractProject>();
+
+                        for (DependencyGraph.Dependency dependency : graph.getUpstreamDependencies(node)) {
+                            if (dependency instanceof GradleModuleDependency)
+                                upstream.add(dependency.getUpstreamProject());
+                        }
+
+                        return upstream;
+                    }
+                });
+
+        indexedGraph = graph;
+    }
+
+    private void recordPublicationHashes(AbstractBuild<?, ?> build) throws InterruptedException {
+        List<GradleDependencyInfo> infos = getGradleDependencyInfo(build.getProject());
+
+        if (infos == null || build.getWorkspace() == null)
+            return;
+
+        Map<String, String> hashes = new HashMap<String, String>();
+
+        for (GradleDependencyInfo info : infos) {
+            addPublicationHashes(build, info, hashes);
+
+            if (info.isMultiProject()) {
+                for (GradleDependencyInfo child : info.getChildGradleDependencyInfos()) {
+                    addPublicationHashes(build, child, hashes);
+                }
+            }
+        }
+
+        if (!hashes.isEmpty())
+            build.addAction(new GradlePublicationHashAction(hashes));
+    }
+
+    private void addPublicationHashes(AbstractBuild<?, ?> build, GradleDependencyInfo info, Map<String, String> hashes) throws InterruptedException {
+        if (info.getGradleFile() == null || info.getPublications() == null || info.getPublications().isEmpty())
+            return;
+
+        FilePath projectDir = new FilePath(build.getWorkspace().getChannel(), info.getGradleFile().getParent());
+
+        try {
+            String hash = projectDir.act(new JarContentHasher(info.getPublications()));
+
+            if (hash != null) {
+                for (Dependency publication : info.getPublications()) {
+                    hashes.put(GradlePublicationHashAction.key(publication), hash);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not hash the artifacts of " + projectDir, e);
+        }
+    }
+
     static void triggerRebuild() {
         DESCRIPTOR.invalidateProjectMap();
         Hudson.getInstance().rebuildDependencyGraph();
     }
 
-    private boolean rebuildDependencies(AbstractBuild<?, ?> b) {
-        if (gradleDependencyInfo == null) {
-            setGradleDependencyInfo(b.getProject(), rebuildGradleDependencyInfo(b.getProject()));
+    private boolean rebuildDependencies(AbstractProject project, List<GradleDependencyInfo> newDependencyInfo) {
+        List<GradleDependencyInfo> originalDependencyInfo = getGradleDependencyInfo(project);
+
+        if (originalDependencyInfo == null) {
+            setGradleDependencyInfo(project, newDependencyInfo);
             return true;
         }
 
-        List<GradleDependencyInfo> originalDependencyInfo = getGradleDependencyInfo(b.getProject());
-        List<GradleDependencyInfo> newDependencyInfo = rebuildGradleDependencyInfo(b.getProject());
-
         boolean rebuild = false;
 
         LOGGER.log(Level.INFO, "Comparing " + originalDependencyInfo + " " + newDependencyInfo);
@@ -95,6 +215,12 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
                         break;
                     }
 
+                    // edges depend on the published versions as well
+                    if (!original.compareAllPublications(newDependency)) {
+                        rebuild = true;
+                        break;
+                    }
+
                     if (!original.getGradleFile().equals(newDependency.getGradleFile())) {
                         rebuild = true;
                         break;
@@ -107,7 +233,7 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
         }
 
         if (rebuild) {
-            setGradleDependencyInfo(b.getProject(), newDependencyInfo);
+            setGradleDependencyInfo(project, newDependencyInfo);
             return true;
         }
 
@@ -120,8 +246,10 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
         if (newDependencyInfo == null || newDependencyInfo.size() == 0)
             return;
 
-        gradleDependencyInfo = newDependencyInfo;
-        storeDependencyInfo(gradleDependencyInfo, project);
+        DEPENDENCY_INFO_CACHE.put(project.getFullName(), newDependencyInfo);
+        dependencySummary = new GradleDependencySummary(newDependencyInfo);
+        storeDependencyInfo(newDependencyInfo, project);
+        indexDependencySummary(project, dependencySummary);
     }
 
     public BuildStepMonitor getRequiredMonitorService() {
@@ -130,27 +258,32 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
 
     public void buildDependencyGraph(AbstractProject abstractProject, DependencyGraph dependencyGraph) {
         if (abstractProject instanceof Project) {
-            List<GradleDependencyInfo> gradleDependencyInfos = getOrRebuildGradleDependencyInfo(abstractProject);
+            Collection<AbstractProject> possibleDeps = DESCRIPTOR.getUpstreamCandidates(abstractProject);
 
-            if (gradleDependencyInfos.size() > 0)
+            if (!possibleDeps.isEmpty())
                 LOGGER.log(Level.INFO, "Building graph for " + abstractProject.getName());
 
-            for (GradleDependencyInfo gradleDependencyInfo : gradleDependencyInfos) {
-                addChildDependencies(abstractProject, dependencyGraph, gradleDependencyInfo);
-
-                if (gradleDependencyInfo.isMultiProject()) {
-                    for (GradleDependencyInfo child : gradleDependencyInfo.getChildGradleDependencyInfos()) {
-                        addChildDependencies(abstractProject, dependencyGraph, child);
-                    }
+            for (AbstractProject possibleProject : possibleDeps) {
+                if (DESCRIPTOR.keeps(possibleProject, abstractProject)) {
+                    LOGGER.log(Level.FINE, "Adding dependency " + possibleProject.getName());
+                    dependencyGraph.addDependency(new GradleModuleDependency(possibleProject, abstractProject));
+                } else {
+                    LOGGER.log(Level.FINE, "Leaving out dependency " + possibleProject.getName() + " closing a cycle");
                 }
             }
         }
     }
 
-    private void addChildDependencies(AbstractProject abstractProject, DependencyGraph dependencyGraph, GradleDependencyInfo gradleDependencyInfo) {
-        for (Dependency dep : gradleDependencyInfo.getDependencies()) {
+    /**
+     * @return the jobs publishing what the project depends on, in its tag group or in the global group
+     */
+    private Set<AbstractProject> getPossibleDependencies(AbstractProject abstractProject) {
+        Set<AbstractProject> result = new LinkedHashSet<AbstractProject>();
 
-            List<AbstractProject> possibleDeps = DESCRIPTOR.getProjects(dep);
+        for (Dependency dep : getDependencySummary(abstractProject).getDependencies()) {
+
+            // only projects of the same tag group, or of the global group
+            Collection<AbstractProject> possibleDeps = DESCRIPTOR.getProjects(dep, getTagName());
 
             if (possibleDeps.isEmpty())
                 LOGGER.log(Level.FINE, "Dependency list is empty");
@@ -159,34 +292,20 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
 
                 if (possibleProject.isDisabled()) continue; // no point in enabling this
 
-                LOGGER.log(Level.FINE, "Adding dependency " + possibleProject.getName());
-
-                if (isMatching(possibleProject, abstractProject)) {
-                    if (!possibleProject.equals(abstractProject)) { // prevent circular reference
-                        dependencyGraph.addDependency(new GradleModuleDependency(possibleProject, abstractProject));
-                    }
+                if (!possibleProject.equals(abstractProject)) { // prevent circular reference
+                    result.add(possibleProject);
                 }
             }
         }
-    }
-
-    private boolean isMatching(AbstractProject other, AbstractProject owner) {
-
-        if (other instanceof Project && owner instanceof Project) {
-            GradleBuildTrigger otherTrigger = getGradleBuildTrigger(other);
-            GradleBuildTrigger ownerTrigger = getGradleBuildTrigger(owner);
 
-            if (ownerTrigger.getTagName() == null || otherTrigger.getTagName() == null) {
-                // assume they're in the global group which always needs notified
-                return true;
-            }
-
-            if (otherTrigger.getTagName().equalsIgnoreCase(ownerTrigger.getTagName())) {
-                return true;
-            }
-        }
+        return result;
+    }
 
-        return false;
+    /**
+     * @return the key of the tag group, null for the global group of jobs without a tag
+     */
+    static String normalizeTag(String tagName) {
+        return tagName == null ? null : tagName.toLowerCase(Locale.ENGLISH);
     }
 
     static GradleBuildTrigger getGradleBuildTrigger(AbstractProject other) {
@@ -203,13 +322,12 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
         List<GradleDependencyInfo> gradleDependencyInfos = getGradleDependencyInfo(abstractProject);
 
         if (gradleDependencyInfos == null || gradleDependencyInfos.size() == 0) {
-            gradleDependencyInfos = rebuildGradleDependencyInfo(abstractProject);
+            gradleDependencyInfos = resolveGradleDependencyInfo(abstractProject);
             setGradleDependencyInfo(abstractProject, gradleDependencyInfos);
         }
 
         if (gradleDependencyInfos == null || gradleDependencyInfos.size() == 0) {
-            gradleDependencyInfos = cloneFromTemplate();
-            setGradleDependencyInfo(abstractProject, gradleDependencyInfos);
+            gradleDependencyInfos = cloneFromTemplate(abstractProject);
         }
 
         if (gradleDependencyInfos == null)
@@ -218,45 +336,140 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
         return gradleDependencyInfos;
     }
 
-    private List<GradleDependencyInfo> getGradleDependencyInfo(AbstractProject abstractProject) {
-        if (gradleDependencyInfo == null) {
-            gradleDependencyInfo = readDependencyInfoFromStore(abstractProject);
+    /**
+     * @return the full dependency models of the project, read again from the store if they were evicted from memory
+     */
+    List<GradleDependencyInfo> getGradleDependencyInfo(AbstractProject abstractProject) {
+        String key = abstractProject.getFullName();
+        List<GradleDependencyInfo> infos = DEPENDENCY_INFO_CACHE.get(key);
+
+        if (infos == null) {
+            infos = readDependencyInfoFromStore(abstractProject);
+
+            if (infos != null)
+                DEPENDENCY_INFO_CACHE.put(key, infos);
         }
 
-        return gradleDependencyInfo;
+        return infos;
+    }
+
+    /**
+     * @return the publications and dependencies of the project, which stay in memory unlike the full models
+     */
+    GradleDependencySummary getDependencySummary(AbstractProject abstractProject) {
+        if (dependencySummary == null) {
+            long storeModified = new File(abstractProject.getRootDir(), GRADLE_CACHE).lastModified();
+            GradleDependencySummary summary = storeModified != 0
+                    ? getDependencyIndex().get(abstractProject.getFullName(), storeModified) : null;
+
+            if (summary == null) {
+                List<GradleDependencyInfo> infos = getOrRebuildGradleDependencyInfo(abstractProject);
+
+                if (dependencySummary != null)
+                    return dependencySummary; // resolved or cloned just now
+
+                summary = new GradleDependencySummary(infos);
+
+                if (summary.isEmpty())
+                    return summary; // looked up again until there is something to summarize
+
+                indexDependencySummary(abstractProject, summary);
+            }
+
+            dependencySummary = summary;
+        }
+
+        return dependencySummary;
+    }
+
+    private static void indexDependencySummary(AbstractProject project, GradleDependencySummary summary) {
+        long storeModified = new File(project.getRootDir(), GRADLE_CACHE).lastModified();
+
+        if (storeModified != 0 && !summary.isEmpty())
+            getDependencyIndex().put(project.getFullName(), storeModified, summary);
     }
 
-    private List<GradleDependencyInfo> cloneFromTemplate() {
+    /**
+     * @return the index of the summaries of all jobs, read once so the first graph doesn't load every store
+     */
+    static synchronized GradleDependencyIndex getDependencyIndex() {
+        if (dependencyIndex == null)
+            dependencyIndex = new GradleDependencyIndex(new File(Hudson.getInstance().getRootDir(), GRADLE_INDEX));
+
+        return dependencyIndex;
+    }
+
+    /**
+     * Copies the dependency models of the template project, sharing its summary.
+     */
+    private List<GradleDependencyInfo> cloneFromTemplate(AbstractProject abstractProject) {
 
         if (templateProject == null)
             return null;
 
-        Project other = getProjectByName(templateProject);
+        Project other = GradleProjectIndex.getProject(templateProject);
         GradleBuildTrigger otherTrigger = getGradleBuildTrigger(other);
 
         if (otherTrigger != null) {
             LOGGER.log(Level.INFO, "Cloning dependencies from " + other.getName());
-            return otherTrigger.getOrRebuildGradleDependencyInfo(other);
+            List<GradleDependencyInfo> infos = otherTrigger.getOrRebuildGradleDependencyInfo(other);
+            setGradleDependencyInfo(abstractProject, infos);
+
+            if (!infos.isEmpty())
+                dependencySummary = otherTrigger.getDependencySummary(other);
+
+            return infos;
         }
 
         return null;
     }
 
-    private Project getProjectByName(String copyFromName) {
-        List<Project> projects = Hudson.getInstance().getAllItems(Project.class);
+    /**
+     * Drops what is kept about a job that was deleted or renamed.
+     */
+    static void forget(String fullName) {
+        DEPENDENCY_INFO_CACHE.remove(fullName);
+        getDependencyIndex().remove(fullName);
+    }
+
+    List<GradleDependencyInfo> resolveGradleDependencyInfo(AbstractProject abstractProject) {
+        List<GradleDependencyInfo> gradleDependencyInfo = new ArrayList<GradleDependencyInfo>();
 
-        for (Project other : projects) {
-            if (other.getName().equalsIgnoreCase(copyFromName)) {
-                return other;
+        for (FilePath buildFile : getBuildFiles(abstractProject)) {
+            try {
+                gradleDependencyInfo.add(GradleDependencyResolver.resolve(buildFile));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not resolve the dependencies of " + buildFile, e);
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING, "Interrupted resolving the dependencies of " + buildFile, e);
             }
         }
 
-        return null;
+        return gradleDependencyInfo;
     }
 
-    private List<GradleDependencyInfo> rebuildGradleDependencyInfo(AbstractProject abstractProject) {
+    /**
+     * Like {@link #resolveGradleDependencyInfo(AbstractProject)}, but fails instead of leaving out the build files
+     * that couldn't be resolved, or if there is none.
+     */
+    List<GradleDependencyInfo> resolveAllGradleDependencyInfo(AbstractProject abstractProject) throws IOException, InterruptedException {
+        List<FilePath> buildFiles = getBuildFiles(abstractProject);
+
+        if (buildFiles.isEmpty())
+            throw new IOException("Could not find a Gradle build file for " + abstractProject.getFullDisplayName());
+
         List<GradleDependencyInfo> gradleDependencyInfo = new ArrayList<GradleDependencyInfo>();
 
+        for (FilePath buildFile : buildFiles) {
+            gradleDependencyInfo.add(GradleDependencyResolver.resolve(buildFile));
+        }
+
+        return gradleDependencyInfo;
+    }
+
+    private List<FilePath> getBuildFiles(AbstractProject abstractProject) {
+        List<FilePath> buildFiles = new ArrayList<FilePath>();
+
         if (abstractProject instanceof Project) {
             Project p = (Project) abstractProject;
 
@@ -264,26 +477,15 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
                 Builder builder = (Builder) b;
 
                 if (builder instanceof Gradle) {
-                    Gradle gradle = (Gradle) builder;
-
-                    File buildFile = getBuildFile(gradle, abstractProject);
+                    FilePath buildFile = getBuildFile((Gradle) builder, abstractProject);
 
-                    if (buildFile != null) {
-                        gradleDependencyInfo.add(factory().newInstance(buildFile));
-                    }
+                    if (buildFile != null)
+                        buildFiles.add(buildFile);
                 }
             }
         }
 
-        return gradleDependencyInfo;
-    }
-
-    private GradleDependencyInfoFactory factory() {
-        if (factory == null) {
-            factory = new GradleDependencyInfoFactory();
-        }
-
-        return factory;
+        return buildFiles;
     }
 
     private DependencyStore getDependencyStore() {
@@ -302,76 +504,113 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
         getDependencyStore().store(new File(project.getRootDir(), GRADLE_CACHE), gradleDependencyInfo);
     }
 
-    private File getBuildFile(Gradle gradle, AbstractProject project) {
+    /**
+     * @return the build file on the node holding the workspace, or on the controller if there is no workspace
+     */
+    private FilePath getBuildFile(Gradle gradle, AbstractProject project) {
 
-        File file = null;
+        FilePath file = getRecordedBuildFile(gradle, project);
 
-        String buildFileNormalized = gradle.getBuildFile();
-
-        EnvVars env = null;
-
-        try {
-            if (project.getLastBuild() != null)
-                env = project.getLastBuild().getEnvironment(TaskListener.NULL);
-        } catch (IOException e) {
-        } catch (InterruptedException e) {
-        }
+        if (file != null)
+            return file;
 
-        // user specified a Gradle build file in the Gradle configuration
-        if (buildFileNormalized != null && buildFileNormalized.trim().length() > 0) {
-            if (env != null)
-                buildFileNormalized = Util.replaceMacro(gradle.getBuildFile(), env);
+        FilePath workspace = project.getSomeWorkspace();
 
-            file = new File(buildFileNormalized);
+        // user specified a Gradle build file in the Gradle configuration, usable as is if it has no macros
+        String buildFile = Util.fixEmptyAndTrim(gradle.getBuildFile());
+        if (buildFile != null && buildFile.indexOf('$') < 0) {
+            file = new FilePath(workspace != null ? workspace : new FilePath(project.getRootDir()), buildFile);
 
             LOGGER.log(Level.FINE, "Custom Gradle script file " + file);
 
-            if (file.exists())
+            if (exists(file))
                 return file;
         }
 
         // root build script directory specified
-        String rootBuildScriptDir = gradle.getRootBuildScriptDir();
-        if (rootBuildScriptDir != null && rootBuildScriptDir.trim().length() > 0) {
-            AbstractBuild build = (AbstractBuild) project.getLastBuild();
-            String rootBuildScriptNormalized = rootBuildScriptDir.trim().replaceAll("[\t\r\n]+", " ");
-            rootBuildScriptNormalized = Util.replaceMacro(rootBuildScriptNormalized.trim(), env);
-            rootBuildScriptNormalized = Util.replaceMacro(rootBuildScriptNormalized, build.getBuildVariableResolver());
-            FilePath normalizedRootBuildScriptDir = new FilePath(build.getModuleRoot(), rootBuildScriptNormalized);
-
-            LOGGER.log(Level.FINE, "Root build script directory " + normalizedRootBuildScriptDir);
-            file = new File(normalizedRootBuildScriptDir.getRemote(), GRADLE_FILE);
-
-            if (file.exists())
+        String rootBuildScriptDir = Util.fixEmptyAndTrim(gradle.getRootBuildScriptDir());
+        if (rootBuildScriptDir != null && rootBuildScriptDir.indexOf('$') < 0 && workspace != null) {
+            file = new FilePath(workspace, rootBuildScriptDir).child(GRADLE_FILE);
+
+            LOGGER.log(Level.FINE, "Root build script directory " + file.getParent());
+
+            if (exists(file))
                 return file;
         }
 
         // use Gradle file in the workspace directory
-        try {
-            if (project.getSomeWorkspace() != null)
-                file = new File(project.getSomeWorkspace().child(GRADLE_FILE).toURI());
-        } catch (Exception ignore) {
-        }
+        if (workspace != null) {
+            file = workspace.child(GRADLE_FILE);
 
-        if (file != null && file.exists())
-            return file;
+            if (exists(file))
+                return file;
+        }
 
         // use Gradle file in the project directory
-        file = new File(project.getRootDir(), GRADLE_FILE);
+        file = new FilePath(new File(project.getRootDir(), GRADLE_FILE));
 
-        if (file.exists())
+        if (exists(file))
             return file;
 
         LOGGER.log(Level.WARNING, "Could not find a Gradle file for " + project.getName());
         return null;
     }
 
+    /**
+     * @return the build file the step used in a recent build, if it is still there, or null
+     */
+    private static FilePath getRecordedBuildFile(Gradle gradle, AbstractProject project) {
+        AbstractBuild build = (AbstractBuild) project.getLastBuild();
+
+        for (int i = 0; build != null && i < RECORDED_BUILDS; i++, build = (AbstractBuild) build.getPreviousBuild()) {
+            GradleBuildFileAction action = (GradleBuildFileAction) build.getAction(GradleBuildFileAction.class);
+            GradleBuildFileAction.Location location = action != null ? action.getLocation(gradle) : null;
+
+            if (location == null)
+                continue;
+
+            Node node = build.getBuiltOn();
+            VirtualChannel channel = node != null ? node.getChannel() : null;
+
+            if (channel == null)
+                return null;
+
+            FilePath file = new FilePath(channel, location.getPath());
+            LOGGER.log(Level.FINE, "Gradle script file " + file + " recorded by " + build);
+            return exists(file) ? file : null;
+        }
+
+        return null;
+    }
+
+    private static boolean exists(FilePath file) {
+        try {
+            return file.exists();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not look for " + file, e);
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.FINE, "Interrupted looking for " + file, e);
+        }
+
+        return false;
+    }
+
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
 
     public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
 
-        private Map<Dependency, List<AbstractProject>> nameToProjectMap;
+        // publications by tag group, the global group being under null
+        private transient Map<String, Map<Dependency, List<ProjectPublication>>> tagToProjectMap;
+
+        // dependencies between jobs before cycles are broken
+        private transient ReachabilityIndex<AbstractProject> candidateIndex;
+
+        private GradleCyclePolicy cyclePolicy;
+
+        public DescriptorImpl() {
+            load();
+        }
 
         @Override
         public boolean isApplicable(Class<? extends AbstractProject> jobType) {
@@ -383,19 +622,123 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
             return "Gradle Build Trigger";
         }
 
-        private synchronized List<AbstractProject> getProjects(Dependency dependency) {
-            if (nameToProjectMap == null) {
+        public GradleCyclePolicy getCyclePolicy() {
+            return cyclePolicy != null ? cyclePolicy : GradleCyclePolicy.BREAK_BY_NAME;
+        }
+
+        @SuppressWarnings("unused")
+        public ListBoxModel doFillCyclePolicyItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (GradleCyclePolicy policy : GradleCyclePolicy.values()) {
+                items.add(policy.getDescription(), policy.name());
+            }
+            return items;
+        }
+
+        @Override
+        public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+            GradleCyclePolicy policy;
+            try {
+                policy = GradleCyclePolicy.valueOf(json.optString("cyclePolicy", GradleCyclePolicy.BREAK_BY_NAME.name()));
+            } catch (IllegalArgumentException e) {
+                throw new FormException("Unknown cycle policy", "cyclePolicy");
+            }
+
+            if (policy != getCyclePolicy()) {
+                cyclePolicy = policy;
+                save();
+                triggerRebuild();
+            }
+
+            return true;
+        }
+
+        /**
+         * @return the jobs the project depends on, including those closing a cycle
+         */
+        synchronized Collection<AbstractProject> getUpstreamCandidates(AbstractProject project) {
+            ReachabilityIndex<AbstractProject> index = getCandidateIndex();
+            int n = index.indexOf(project);
+            return n < 0 ? Collections.<AbstractProject>emptyList() : index.toList(index.directUpstream(n));
+        }
+
+        /**
+         * @return whether the dependency of {@code downstream} on {@code upstream} is kept by the cycle policy
+         */
+        synchronized boolean keeps(AbstractProject upstream, AbstractProject downstream) {
+            return !getCandidateIndex().isSameComponent(upstream, downstream)
+                    || getCyclePolicy().keeps(upstream, downstream);
+        }
+
+        /**
+         * @return the dependencies between jobs as found in their Gradle dependencies, cycles included
+         */
+        synchronized ReachabilityIndex<AbstractProject> getCandidateIndex() {
+            if (candidateIndex == null) {
+                final Map<AbstractProject, Set<AbstractProject>> upstream = new LinkedHashMap<AbstractProject, Set<AbstractProject>>();
+
+                for (Project p : GradleProjectIndex.getProjects()) {
+                    GradleBuildTrigger trigger = getGradleBuildTrigger(p);
+
+                    if (trigger != null)
+                        upstream.put(p, trigger.getPossibleDependencies(p));
+                }
+
+                candidateIndex = new ReachabilityIndex<AbstractProject>(upstream.keySet(),
+                        new ReachabilityIndex.Edges<AbstractProject>() {
+                            public Collection<AbstractProject> getUpstream(AbstractProject node) {
+                                return upstream.get(node);
+                            }
+                        });
+
+                List<List<AbstractProject>> cycles = candidateIndex.getCycles();
+                if (!cycles.isEmpty())
+                    LOGGER.log(Level.WARNING, "Jobs depending on each other through Gradle dependencies: " + cycles
+                            + ", applying " + getCyclePolicy());
+            }
+
+            return candidateIndex;
+        }
+
+        /**
+         * @param tagName the tag of the depending job; jobs of the global group depend on jobs of any group, the
+         *                others on jobs of their own group and of the global group
+         */
+        private synchronized Collection<AbstractProject> getProjects(Dependency dependency, String tagName) {
+            if (tagToProjectMap == null) {
                 calculateProjectMap();
             }
 
-            List<AbstractProject> result = nameToProjectMap.get(dependency);
-            if (result == null) result = Collections.emptyList();
+            Set<AbstractProject> result = new LinkedHashSet<AbstractProject>();
+            String group = normalizeTag(tagName);
+
+            if (group == null) {
+                for (Map<Dependency, List<ProjectPublication>> projectMap : tagToProjectMap.values()) {
+                    addProjects(projectMap, dependency, result);
+                }
+            } else {
+                addProjects(tagToProjectMap.get(group), dependency, result);
+                addProjects(tagToProjectMap.get(null), dependency, result);
+            }
+
             return result;
         }
 
+        private void addProjects(Map<Dependency, List<ProjectPublication>> projectMap, Dependency dependency, Set<AbstractProject> result) {
+            List<ProjectPublication> publications = projectMap != null ? projectMap.get(dependency) : null;
+            if (publications == null) return;
+
+            // only projects publishing the version the dependency resolves to
+            for (ProjectPublication publication : publications) {
+                if (dependency.isSatisfiedBy(publication.publication)) {
+                    result.add(publication.project);
+                }
+            }
+        }
+
         private void calculateProjectMap() {
-            List<Project> projects = Hudson.getInstance().getAllItems(Project.class);
-            Map<Dependency, List<AbstractProject>> projectMap = new HashMap<Dependency, List<AbstractProject>>();
+            List<Project> projects = GradleProjectIndex.getProjects();
+            Map<String, Map<Dependency, List<ProjectPublication>>> tagMap = new HashMap<String, Map<Dependency, List<ProjectPublication>>>();
             for (Project p : projects) {
                 if (p.isDisabled()) {
                     continue;
@@ -405,54 +748,78 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
 
                     LOGGER.log(Level.FINE, "Using build trigger to calculate dependencies for " + p.getName());
 
-                    List<GradleDependencyInfo> dependencyInfoList = null;
+                    GradleDependencySummary summary = null;
 
                     try {
-                        dependencyInfoList = gradleBuildTrigger.getOrRebuildGradleDependencyInfo(p);
+                        summary = gradleBuildTrigger.getDependencySummary(p);
                     } catch (Exception e) {
                         LOGGER.log(Level.SEVERE, "Failed to get dependency info", e);
                         continue;
                     }
 
-                    if (dependencyInfoList.size() > 0)
-                        LOGGER.log(Level.FINE, "Built dependencies for " + p.getName() + " " + dependencyInfoList);
+                    if (!summary.isEmpty())
+                        LOGGER.log(Level.FINE, "Built dependencies for " + p.getName() + " " + summary.getPublications());
 
-                    for (GradleDependencyInfo dependencyInfo : dependencyInfoList) {
-                        if (dependencyInfo.isMultiProject()) { // point child projects to parent Jenkins name
-                            for (GradleDependencyInfo child : dependencyInfo.getChildGradleDependencyInfos()) {
-                                addProjectMapping(projectMap, p, child);
-                            }
-                        }
-                        addProjectMapping(projectMap, p, dependencyInfo);
+                    String group = normalizeTag(gradleBuildTrigger.getTagName());
+                    Map<Dependency, List<ProjectPublication>> projectMap = tagMap.get(group);
+
+                    if (projectMap == null) {
+                        projectMap = new HashMap<Dependency, List<ProjectPublication>>();
+                        tagMap.put(group, projectMap);
                     }
+
+                    // child projects point to the parent Jenkins name
+                    addProjectMapping(projectMap, p, summary);
                 }
             }
 
-            LOGGER.log(Level.FINE, "Built project map " + projectMap);
+            LOGGER.log(Level.FINE, "Built project map " + tagMap);
 
-            this.nameToProjectMap = projectMap;
+            this.tagToProjectMap = tagMap;
         }
 
-        private void addProjectMapping(Map<Dependency, List<AbstractProject>> projectMap, Project targetProject, GradleDependencyInfo dependencyInfo) {
-            for (Dependency publishedDependency : dependencyInfo.getPublications()) {
+        private void addProjectMapping(Map<Dependency, List<ProjectPublication>> projectMap, Project targetProject, GradleDependencySummary summary) {
+            for (Dependency publishedDependency : summary.getPublications()) {
 
-                List<AbstractProject> list = projectMap.get(publishedDependency);
+                List<ProjectPublication> list = projectMap.get(publishedDependency);
 
                 if (list == null) {
-                    list = new ArrayList<AbstractProject>();
+                    list = new ArrayList<ProjectPublication>();
                 }
 
-                list.add(targetProject);
+                list.add(new ProjectPublication(targetProject, publishedDependency));
                 LOGGER.log(Level.FINE, "Adding name " + publishedDependency + " for project " + targetProject.getName());
                 projectMap.put(publishedDependency, list);
             }
         }
 
         public synchronized void invalidateProjectMap() {
-            this.nameToProjectMap = null;
+            this.tagToProjectMap = null;
+            this.candidateIndex = null;
+        }
+
+        private static final class ProjectPublication {
+            private final AbstractProject project;
+            private final Dependency publication;
+
+            ProjectPublication(AbstractProject project, Dependency publication) {
+                this.project = project;
+                this.publication = publication;
+            }
+
+            @Override
+            public String toString() {
+                return project.getName() + "@" + publication.getVersion();
+            }
         }
     }
 
+    private static final ReachabilityIndex.Weights<AbstractProject> ESTIMATED_DURATION = new ReachabilityIndex.Weights<AbstractProject>() {
+        public long getWeight(AbstractProject project) {
+            return project.getEstimatedDuration();
+        }
+    };
+
     protected static class GradleModuleDependency extends DependencyGraph.Dependency {
 
         public GradleModuleDependency(AbstractProject upstream, AbstractProject downstream) {
@@ -460,15 +827,33 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
         }
 
         public boolean shouldTriggerBuild(AbstractBuild build, TaskListener listener, List<Action> actions) {
-            if (build.getResult().isWorseThan(Result.SUCCESS)) {
+            boolean success = !build.getResult().isWorseThan(Result.SUCCESS);
+            AbstractProject downstreamProject = getDownstreamProject();
+            AbstractProject parent = getUpstreamProject();
+
+            // record the outcome in the wave plans even if nothing gets triggered
+            WaveScheduler.Decision decision = WAVE_SCHEDULER.decide(getGradleReachabilityIndex(), parent,
+                    build.getNumber(), success, downstreamProject);
+
+            if (!success) {
                 return false;
             }
             else {
-                AbstractProject downstreamProject = getDownstreamProject();
                 LOGGER.log(Level.INFO, "Considering whether to trigger " + downstreamProject + " or not");
 
-                AbstractProject parent = getUpstreamProject();
-                if (areUpstreamsBuilding(downstreamProject, parent)) {
+                if (decision == WaveScheduler.Decision.HOLD) {
+                    LOGGER.log(Level.INFO, " -> No, because downstream waits for other upstreams of its wave or was already triggered");
+                    return false;
+                }
+                else if (arePublicationsUnchanged(build, getUpstreamBuilds(build, downstreamProject, decision), downstreamProject, listener)) {
+                    LOGGER.log(Level.INFO, " -> No, because the artifacts used by downstream are unchanged");
+                    scheduleReleased(WAVE_SCHEDULER.skipped(downstreamProject), build, listener);
+                    return false;
+                }
+                else if (decision == WaveScheduler.Decision.TRIGGER) {
+                    LOGGER.log(Level.INFO, " -> Scheduled in wave " + WAVE_SCHEDULER.getWave(parent, downstreamProject));
+                }
+                else if (areUpstreamsBuilding(downstreamProject, parent)) {
                     LOGGER.log(Level.INFO, " -> No, because downstream has dependencies already building or in queue");
                     return false;
                 }
@@ -476,42 +861,184 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
                     LOGGER.log(Level.INFO, " -> No, because downstream has dependencies in the downstream projects list");
                     return false;
                 }
-                else {
-                    AbstractBuild dlb = (AbstractBuild) downstreamProject.getLastBuild();
-
-                    for (Object obj : downstreamProject.getUpstreamProjects()) {
-                        AbstractProject up = (AbstractProject) obj;
-                        Object ulb;
-                        if (up == parent) {
-                            if (build.getResult() != null && build.getResult().isWorseThan(Result.UNSTABLE)) {
-                                ulb = up.getLastSuccessfulBuild();
-                            } else {
-                                ulb = build;
-                            }
-                        }
-                        else {
+
+                AbstractBuild dlb = (AbstractBuild) downstreamProject.getLastBuild();
+
+                for (Object obj : downstreamProject.getUpstreamProjects()) {
+                    AbstractProject up = (AbstractProject) obj;
+                    Object ulb;
+                    if (up == parent) {
+                        if (build.getResult() != null && build.getResult().isWorseThan(Result.UNSTABLE)) {
                             ulb = up.getLastSuccessfulBuild();
+                        } else {
+                            ulb = build;
                         }
+                    }
+                    else {
+                        ulb = up.getLastSuccessfulBuild();
+                    }
 
-                        if (ulb == null) {
-                            LOGGER.log(Level.INFO, " -> No, because another upstream " + up + " for " + downstreamProject + " has no successful build");
-                            return false;
-                        }
+                    if (ulb == null) {
+                        LOGGER.log(Level.INFO, " -> No, because another upstream " + up + " for " + downstreamProject + " has no successful build");
+                        if (decision == WaveScheduler.Decision.TRIGGER)
+                            WAVE_SCHEDULER.vetoed(downstreamProject);
+                        return false;
+                    }
 
-                        if (dlb != null) {
-                            int n = dlb.getUpstreamRelationship(up);
-                            assert n == -1 || ((Run) ulb).getNumber() >= n;
-                        }
+                    if (dlb != null) {
+                        int n = dlb.getUpstreamRelationship(up);
+                        assert n == -1 || ((Run) ulb).getNumber() >= n;
                     }
                 }
 
+                actions.add(getCriticalPath(downstreamProject));
+
+                return true;
+            }
+        }
+
+        private static GradleCriticalPathAction getCriticalPath(AbstractProject project) {
+            long remaining = getGradleReachabilityIndex().getLongestDownstreamPath(project, ESTIMATED_DURATION);
+            LOGGER.log(Level.FINE, " -> Critical path of " + project + " is " + remaining + " ms");
+            return new GradleCriticalPathAction(remaining);
+        }
+
+        /**
+         * Schedules the nodes of a wave that only waited for nodes which turned out not to need a build.
+         */
+        private static void scheduleReleased(List<AbstractProject> released, AbstractBuild build, TaskListener listener) {
+            for (AbstractProject project : released) {
+                if (arePublicationsUnchanged(build, getUpstreamBuilds(build, project, WaveScheduler.Decision.TRIGGER), project, listener)) {
+                    LOGGER.log(Level.INFO, "Not scheduling " + project + " as the artifacts it uses from its wave are unchanged");
+                    scheduleReleased(WAVE_SCHEDULER.skipped(project), build, listener);
+                    continue;
+                }
+
+                LOGGER.log(Level.INFO, "Scheduling " + project + " as the remaining upstreams of its wave weren't rebuilt");
+                project.scheduleBuild(project.getQuietPeriod(), new Cause.UpstreamCause((Run) build), getCriticalPath(project));
+            }
+        }
+
+        /**
+         * @return the upstream builds the downstream project consumes: those of its wave if a wave plan released it,
+         * else the given build only, or null if one of them is gone
+         */
+        private static List<AbstractBuild> getUpstreamBuilds(AbstractBuild build, AbstractProject downstreamProject,
+                                                             WaveScheduler.Decision decision) {
+            if (decision != WaveScheduler.Decision.TRIGGER)
+                return Collections.singletonList(build);
+
+            List<AbstractBuild> builds = new ArrayList<AbstractBuild>();
+
+            for (Map.Entry<AbstractProject, Integer> upstream : WAVE_SCHEDULER.getBuiltUpstreams(downstreamProject).entrySet()) {
+                AbstractBuild upstreamBuild = (AbstractBuild) upstream.getKey().getBuildByNumber(upstream.getValue());
+
+                if (upstreamBuild == null)
+                    return null;
+
+                builds.add(upstreamBuild);
+            }
+
+            return builds;
+        }
+
+        /**
+         * Checks whether the publications of all of the upstream builds used by the downstream project have the same
+         * content as in the upstream builds the downstream project was last built against.
+         *
+         * @param build the build deciding about the downstream project, which records the time saved
+         */
+        private static boolean arePublicationsUnchanged(AbstractBuild build, List<AbstractBuild> upstreamBuilds,
+                                                        AbstractProject downstreamProject, TaskListener listener) {
+            AbstractBuild lastDownstreamBuild = (AbstractBuild) downstreamProject.getLastBuild();
+
+            if (upstreamBuilds == null || upstreamBuilds.isEmpty() || lastDownstreamBuild == null)
+                return false;
+
+            for (AbstractBuild upstreamBuild : upstreamBuilds) {
+                GradlePublicationHashAction current = upstreamBuild.getAction(GradlePublicationHashAction.class);
+                Run consumed = current != null ? getConsumedBuild(upstreamBuild, lastDownstreamBuild) : null;
+                GradlePublicationHashAction previous = consumed != null ? consumed.getAction(GradlePublicationHashAction.class) : null;
+
+                if (previous == null || !current.isUnchanged(previous, getUsedPublications(upstreamBuild.getProject(), downstreamProject)))
+                    return false;
+            }
+
+            GradlePublicationHashAction saved = build.getAction(GradlePublicationHashAction.class);
+
+            if (saved == null)
                 return true;
+
+            saved.addSuppressed(downstreamProject.getFullName(), downstreamProject.getEstimatedDuration());
+            listener.getLogger().println("Not triggering " + downstreamProject.getFullDisplayName()
+                    + " as the artifacts it uses didn't change since " + lastDownstreamBuild.getFullDisplayName()
+                    + ", saving about " + Util.getTimeSpanString(Math.max(0, downstreamProject.getEstimatedDuration()))
+                    + " (" + saved.getSavedTimeString() + " in total for this build)");
+
+            try {
+                build.save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not save " + build, e);
+            }
+
+            return true;
+        }
+
+        /**
+         * Finds the upstream build whose artifacts the given downstream build used: the one recorded through
+         * fingerprints or else the last successful one finished before the downstream build started.
+         */
+        private static Run getConsumedBuild(AbstractBuild build, AbstractBuild downstreamBuild) {
+            AbstractProject upstreamProject = build.getProject();
+            int n = downstreamBuild.getUpstreamRelationship(upstreamProject);
+
+            if (n >= 0)
+                return n < build.getNumber() ? upstreamProject.getBuildByNumber(n) : null;
+
+            Run candidate = build.getPreviousBuild();
+
+            for (int i = 0; candidate != null && i < 20; i++, candidate = candidate.getPreviousBuild()) {
+                if (candidate.getResult() == Result.SUCCESS
+                        && candidate.getTimeInMillis() + candidate.getDuration() <= downstreamBuild.getTimeInMillis()) {
+                    return candidate;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * @return the publications of the upstream project the downstream project depends on, or null if unknown
+         */
+        private static Collection<Dependency> getUsedPublications(AbstractProject upstreamProject, AbstractProject downstreamProject) {
+            GradleBuildTrigger upstreamTrigger = getGradleBuildTrigger(upstreamProject);
+            GradleBuildTrigger downstreamTrigger = getGradleBuildTrigger(downstreamProject);
+
+            if (upstreamTrigger == null || downstreamTrigger == null)
+                return null;
+
+            List<GradleDependencyInfo> upstreamInfos = upstreamTrigger.getGradleDependencyInfo(upstreamProject);
+            List<GradleDependencyInfo> downstreamInfos = downstreamTrigger.getGradleDependencyInfo(downstreamProject);
+
+            if (upstreamInfos == null || downstreamInfos == null)
+                return null;
+
+            Set<Dependency> used = new HashSet<Dependency>();
+
+            for (GradleDependencyInfo upstreamInfo : upstreamInfos) {
+                for (Dependency publication : upstreamInfo.getAllPublications()) {
+                    for (GradleDependencyInfo downstreamInfo : downstreamInfos) {
+                        if (!downstreamInfo.getAllDependencies(new GradleDependencyInfo.DefaultDependencyFilter(publication.getGroup(), publication.getName())).isEmpty())
+                            used.add(publication);
+                    }
+                }
             }
+
+            return used;
         }
 
         private boolean areUpstreamsBuilding(AbstractProject<?, ?> downstreamProject, AbstractProject<?, ?> excludeProject) {
-            DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
-            Set<AbstractProject> tups = graph.getTransitiveUpstream(downstreamProject);
+            List<AbstractProject> tups = getReachabilityIndex().getTransitiveUpstream(downstreamProject);
 
             for (AbstractProject tup : tups) {
                 if (tup != excludeProject && (tup.isBuilding() || tup.isInQueue())) {
@@ -523,20 +1050,24 @@ public class GradleBuildTrigger extends Notifier implements DependecyDeclarer {
         }
 
         private boolean inDownstreamProjects(AbstractProject<?, ?> downstreamProject) {
-            DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
-            Set<AbstractProject> tups = graph.getTransitiveUpstream(downstreamProject);
+            return getReachabilityIndex().hasIntermediate(getUpstreamProject(), downstreamProject);
+        }
+    }
 
-            for (AbstractProject tup : tups) {
-                List<AbstractProject> downstreamProjects = getUpstreamProject().getDownstreamProjects();
+    /**
+     * Reports every completed build to the wave plans, including builds of projects without downstream projects.
+     */
+    @Extension
+    public static class WaveCompletion extends RunListener<AbstractBuild> {
 
-                for (AbstractProject dp : downstreamProjects) {
-                    if(dp != getUpstreamProject() && dp != downstreamProject && dp == tup) {
-                        return true;
-                    }
-                }
-            }
+        public WaveCompletion() {
+            super(AbstractBuild.class);
+        }
 
-            return false;
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            Result result = build.getResult();
+            WAVE_SCHEDULER.completed(build.getProject(), build.getNumber(), result != null && !result.isWorseThan(Result.SUCCESS));
         }
     }
 }
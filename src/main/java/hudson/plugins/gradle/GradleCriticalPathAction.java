@@ -0,0 +1,33 @@
+package hudson.plugins.gradle;
+
+import hudson.model.Action;
+
+/**
+ * Attached to builds triggered by {@link GradleBuildTrigger}, holding the estimated time from the start of the
+ * build until its longest chain of downstream builds has finished. Used by {@link GradleCriticalPathQueueSorter}
+ * to hand executors to builds on the critical path first.
+ */
+public class GradleCriticalPathAction implements Action {
+
+    private final long remainingMillis;
+
+    public GradleCriticalPathAction(long remainingMillis) {
+        this.remainingMillis = remainingMillis;
+    }
+
+    public long getRemainingMillis() {
+        return remainingMillis;
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -0,0 +1,53 @@
+package hudson.plugins.gradle;
+
+import hudson.Extension;
+import hudson.model.Queue;
+import hudson.model.queue.QueueSorter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders the buildable items triggered by {@link GradleBuildTrigger} by the length of their remaining downstream
+ * chain, longest first. They are only reordered among the positions they already hold in the queue, so items
+ * without a {@link GradleCriticalPathAction} keep their place and are never starved by Gradle builds.
+ *
+ * Jenkins only uses one queue sorter, so this has no effect if another plugin installs its own.
+ */
+@Extension
+public class GradleCriticalPathQueueSorter extends QueueSorter {
+
+    private static final Comparator<Queue.BuildableItem> LONGEST_PATH_FIRST = new Comparator<Queue.BuildableItem>() {
+        public int compare(Queue.BuildableItem o1, Queue.BuildableItem o2) {
+            long r1 = remaining(o1);
+            long r2 = remaining(o2);
+            return r1 < r2 ? 1 : (r1 == r2 ? 0 : -1);
+        }
+    };
+
+    @Override
+    public void sortBuildableItems(List<Queue.BuildableItem> buildables) {
+        List<Integer> positions = new ArrayList<Integer>();
+        List<Queue.BuildableItem> prioritized = new ArrayList<Queue.BuildableItem>();
+
+        for (int i = 0; i < buildables.size(); i++) {
+            if (buildables.get(i).getAction(GradleCriticalPathAction.class) != null) {
+                positions.add(i);
+                prioritized.add(buildables.get(i));
+            }
+        }
+
+        // stable, so FIFO order is kept among equals
+        Collections.sort(prioritized, LONGEST_PATH_FIRST);
+
+        for (int i = 0; i < positions.size(); i++) {
+            buildables.set(positions.get(i), prioritized.get(i));
+        }
+    }
+
+    private static long remaining(Queue.BuildableItem item) {
+        return item.getAction(GradleCriticalPathAction.class).getRemainingMillis();
+    }
+}
@@ -0,0 +1,45 @@
+package hudson.plugins.gradle;
+
+import hudson.model.AbstractProject;
+
+/**
+ * What to do with the dependencies between jobs that depend on each other through their Gradle dependencies,
+ * directly or through other jobs.
+ */
+public enum GradleCyclePolicy {
+
+    ALLOW("Keep all dependencies between the jobs of a cycle") {
+        public boolean keeps(AbstractProject upstream, AbstractProject downstream) {
+            return true;
+        }
+    },
+
+    BREAK_BY_NAME("Build the jobs of a cycle in the order of their names") {
+        public boolean keeps(AbstractProject upstream, AbstractProject downstream) {
+            int order = upstream.getFullName().compareToIgnoreCase(downstream.getFullName());
+            // names differing only in case must still keep one of the two dependencies
+            return (order != 0 ? order : upstream.getFullName().compareTo(downstream.getFullName())) < 0;
+        }
+    },
+
+    SUPPRESS("Don't trigger builds between the jobs of a cycle") {
+        public boolean keeps(AbstractProject upstream, AbstractProject downstream) {
+            return false;
+        }
+    };
+
+    private final String description;
+
+    GradleCyclePolicy(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return whether the dependency of {@code downstream} on {@code upstream}, both part of the same cycle, is kept
+     */
+    public abstract boolean keeps(AbstractProject upstream, AbstractProject downstream);
+}
@@ -0,0 +1,283 @@
+package hudson.plugins.gradle;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.*;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.LogTaskListener;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the Gradle daemons started by {@link Gradle} build steps, per node and keyed by the Gradle
+ * executable and the daemon JVM arguments.
+ *
+ * The number of daemon processes per node is bounded, idle daemons are stopped after a while and daemons used by
+ * a build that ended abnormally are replaced before they are used again. Since {@code gradle --stop} stops every
+ * daemon of a daemon registry, each key gets a registry of its own below the root of the node, so stopping the
+ * daemons of a key leaves the daemons of other keys and of builds outside the pool alone. Gradle starts another
+ * daemon in the registry for each build using it while the others are busy, so a key counts as many daemons as
+ * builds used it at once. Daemons still in use by a build are never stopped.
+ */
+public class GradleDaemonPool {
+
+    private static final Logger LOGGER = Logger.getLogger(GradleDaemonPool.class.getName());
+
+    public static int MAX_DAEMONS_PER_NODE = Integer.getInteger(GradleDaemonPool.class.getName() + ".maxDaemonsPerNode", 3);
+
+    public static int MAX_IDLE_MINUTES = Integer.getInteger(GradleDaemonPool.class.getName() + ".maxIdleMinutes", 60);
+
+    private static final GradleDaemonPool INSTANCE = new GradleDaemonPool();
+
+    // access ordered, so iteration starts with the least recently used daemon
+    private final Map<DaemonKey, Daemon> daemons = new LinkedHashMap<DaemonKey, Daemon>(16, 0.75f, true);
+
+    public static GradleDaemonPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the key of the daemons a build on the node uses, the Gradle user home being taken from the environment
+     */
+    static DaemonKey key(Node node, String executable, String jvmArgs, EnvVars env) {
+        return new DaemonKey(node.getNodeName(), executable, jvmArgs, env.get("GRADLE_USER_HOME"));
+    }
+
+    /**
+     * @return the directory to pass as {@code org.gradle.daemon.registry.base} to the daemons of the key, or null
+     * if the node is offline
+     */
+    static FilePath getRegistryBase(Node node, DaemonKey key) {
+        FilePath root = node.getRootPath();
+        return root != null ? root.child("gradle-daemons").child(Util.getDigestOf(key.executable + "\n"
+                + key.jvmArgs + "\n" + key.userHome)) : null;
+    }
+
+    /**
+     * Registers the use of a daemon by a build, stopping idle, surplus or unhealthy daemons of the node first.
+     */
+    public Daemon acquire(DaemonKey key, FilePath registryBase, FilePath pwd, EnvVars env,
+                          Launcher launcher, TaskListener listener) throws InterruptedException {
+        List<Daemon> evicted = new ArrayList<Daemon>();
+        Daemon daemon = lease(key, registryBase.getRemote(), pwd.getRemote(), env, System.currentTimeMillis(), evicted);
+
+        for (Daemon d : evicted) {
+            new GradleLogger(listener).info("Stopping Gradle daemon " + d);
+            stop(d, launcher, listener);
+        }
+
+        return daemon;
+    }
+
+    /**
+     * Registers the use of a daemon by a build.
+     *
+     * @param evicted receives the daemons of the node to stop first
+     */
+    synchronized Daemon lease(DaemonKey key, String registryBase, String pwd, EnvVars env, long now, List<Daemon> evicted) {
+        evicted.addAll(selectEvictions(key.nodeName, key, now));
+
+        Daemon daemon = daemons.get(key);
+        if (daemon == null) {
+            daemon = new Daemon(key, registryBase, pwd, env);
+            daemons.put(key, daemon);
+        }
+
+        daemon.leases++;
+        daemon.processes = Math.max(daemon.processes, daemon.leases);
+        daemon.lastUsed = now;
+        return daemon;
+    }
+
+    /**
+     * Ends the use of a daemon by a build.
+     *
+     * @param healthy false if the build ended abnormally, so the daemon is replaced before its next use
+     */
+    public synchronized void release(Daemon daemon, boolean healthy) {
+        daemon.leases--;
+        daemon.lastUsed = System.currentTimeMillis();
+
+        if (!healthy)
+            daemon.healthy = false;
+    }
+
+    /**
+     * Selects the daemons to stop on a node, least recently used first, and forgets about them. Daemons in use
+     * by a build are left running, so the bound may be exceeded while all of them are busy.
+     */
+    private List<Daemon> selectEvictions(String nodeName, DaemonKey keep, long now) {
+        List<Daemon> onNode = new ArrayList<Daemon>();
+        Daemon used = null;
+        int processes = 0;
+
+        for (Daemon d : daemons.values()) {
+            if (d.key.nodeName.equals(nodeName)) {
+                onNode.add(d);
+                processes += d.processes;
+
+                if (d.key.equals(keep))
+                    used = d;
+            }
+        }
+
+        List<Daemon> evicted = new ArrayList<Daemon>();
+        long maxIdle = TimeUnit.MINUTES.toMillis(MAX_IDLE_MINUTES);
+        // make room for the daemon about to be started if all daemons of the key are busy
+        int surplus = processes - MAX_DAEMONS_PER_NODE + (keep != null && (used == null || used.leases >= used.processes) ? 1 : 0);
+
+        for (Daemon d : onNode) {
+            boolean idle = now - d.lastUsed > maxIdle;
+            boolean kept = d == used && d.healthy;
+
+            if (d.leases == 0 && !kept && (!d.healthy || idle || surplus > 0)) {
+                evicted.add(d);
+                // an unhealthy daemon of the key is replaced by a new one
+                surplus -= d == used ? d.processes - 1 : d.processes;
+            }
+        }
+
+        for (Daemon d : evicted) {
+            daemons.remove(d.key);
+        }
+
+        return evicted;
+    }
+
+    private void stop(Daemon daemon, Launcher launcher, TaskListener listener) throws InterruptedException {
+        ArgumentListBuilder args = new ArgumentListBuilder(daemon.key.executable, "--stop",
+                "-Dorg.gradle.daemon.registry.base=" + daemon.registryBase);
+
+        if (!launcher.isUnix())
+            args = args.toWindowsCommand();
+
+        try {
+            launcher.launch().cmds(args).envs(daemon.env)
+                    .pwd(new FilePath(launcher.getChannel(), daemon.pwd)).stdout(listener).join();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not stop Gradle daemon " + daemon, e);
+        }
+    }
+
+    /**
+     * Stops idle daemons that no build is using.
+     */
+    void sweep() throws InterruptedException {
+        Set<String> nodeNames = new HashSet<String>();
+
+        synchronized (this) {
+            for (DaemonKey key : daemons.keySet()) {
+                nodeNames.add(key.nodeName);
+            }
+        }
+
+        for (String nodeName : nodeNames) {
+            List<Daemon> evicted;
+
+            synchronized (this) {
+                evicted = selectEvictions(nodeName, null, System.currentTimeMillis());
+            }
+
+            if (evicted.isEmpty())
+                continue;
+
+            Node node = nodeName.length() == 0 ? Hudson.getInstance() : Hudson.getInstance().getNode(nodeName);
+            Computer computer = node != null ? node.toComputer() : null;
+
+            if (computer == null || computer.isOffline())
+                continue; // the daemons went away with the node
+
+            TaskListener listener = new LogTaskListener(LOGGER, Level.FINE);
+            Launcher launcher = node.createLauncher(listener);
+
+            for (Daemon d : evicted) {
+                LOGGER.log(Level.FINE, "Stopping idle Gradle daemon " + d);
+                stop(d, launcher, listener);
+            }
+        }
+    }
+
+    static final class DaemonKey {
+        private final String nodeName;
+        private final String executable;
+        private final String jvmArgs;
+        private final String userHome;
+
+        DaemonKey(String nodeName, String executable, String jvmArgs, String userHome) {
+            this.nodeName = nodeName;
+            this.executable = executable;
+            this.jvmArgs = jvmArgs == null ? "" : jvmArgs;
+            this.userHome = userHome == null ? "" : userHome;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            DaemonKey that = (DaemonKey) o;
+
+            return nodeName.equals(that.nodeName) && executable.equals(that.executable) && jvmArgs.equals(that.jvmArgs)
+                    && userHome.equals(that.userHome);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = nodeName.hashCode();
+            result = 31 * result + executable.hashCode();
+            result = 31 * result + jvmArgs.hashCode();
+            result = 31 * result + userHome.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return executable + " " + jvmArgs + (userHome.length() > 0 ? " with user home " + userHome : "")
+                    + " on " + (nodeName.length() == 0 ? "master" : nodeName);
+        }
+    }
+
+    public static final class Daemon {
+        private final DaemonKey key;
+        private final String registryBase;
+        private final String pwd;
+        private final EnvVars env;
+        private long lastUsed;
+        private int leases;
+        // daemon processes in the registry, as many as builds used it at once
+        private int processes;
+        private boolean healthy = true;
+
+        Daemon(DaemonKey key, String registryBase, String pwd, EnvVars env) {
+            this.key = key;
+            this.registryBase = registryBase;
+            this.pwd = pwd;
+            this.env = new EnvVars(env);
+        }
+
+        @Override
+        public String toString() {
+            return key.toString();
+        }
+    }
+
+    @Extension
+    public static class IdleDaemonSweeper extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(10);
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            GradleDaemonPool.get().sweep();
+        }
+    }
+}
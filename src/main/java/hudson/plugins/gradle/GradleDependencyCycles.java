@@ -0,0 +1,107 @@
+package hudson.plugins.gradle;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.ManagementLink;
+
+import java.util.*;
+
+/**
+ * Lists the cycles between jobs found in their Gradle dependencies and which of their dependencies the
+ * {@link GradleCyclePolicy} keeps.
+ */
+@Extension
+public class GradleDependencyCycles extends ManagementLink {
+
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    public String getDisplayName() {
+        return "Gradle Dependency Cycles";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Jobs depending on each other through their Gradle dependencies, and how the cycles are broken.";
+    }
+
+    public String getUrlName() {
+        return "gradle-cycles";
+    }
+
+    public GradleCyclePolicy getPolicy() {
+        return GradleBuildTrigger.DESCRIPTOR.getCyclePolicy();
+    }
+
+    public List<Cycle> getCycles() {
+        GradleBuildTrigger.DescriptorImpl descriptor = GradleBuildTrigger.DESCRIPTOR;
+        ReachabilityIndex<AbstractProject> index = descriptor.getCandidateIndex();
+        List<Cycle> cycles = new ArrayList<Cycle>();
+
+        for (List<AbstractProject> jobs : index.getCycles()) {
+            List<AbstractProject> sorted = new ArrayList<AbstractProject>(jobs);
+            Collections.sort(sorted, BY_NAME);
+
+            List<Edge> edges = new ArrayList<Edge>();
+            for (AbstractProject downstream : sorted) {
+                for (AbstractProject upstream : descriptor.getUpstreamCandidates(downstream)) {
+                    if (index.isSameComponent(upstream, downstream))
+                        edges.add(new Edge(upstream, downstream, descriptor.keeps(upstream, downstream)));
+                }
+            }
+
+            cycles.add(new Cycle(sorted, edges));
+        }
+
+        return cycles;
+    }
+
+    private static final Comparator<AbstractProject> BY_NAME = new Comparator<AbstractProject>() {
+        public int compare(AbstractProject a, AbstractProject b) {
+            return a.getFullName().compareToIgnoreCase(b.getFullName());
+        }
+    };
+
+    public static final class Cycle {
+        private final List<AbstractProject> jobs;
+        private final List<Edge> edges;
+
+        Cycle(List<AbstractProject> jobs, List<Edge> edges) {
+            this.jobs = jobs;
+            this.edges = edges;
+        }
+
+        public List<AbstractProject> getJobs() {
+            return jobs;
+        }
+
+        public List<Edge> getEdges() {
+            return edges;
+        }
+    }
+
+    public static final class Edge {
+        private final AbstractProject upstream;
+        private final AbstractProject downstream;
+        private final boolean kept;
+
+        Edge(AbstractProject upstream, AbstractProject downstream, boolean kept) {
+            this.upstream = upstream;
+            this.downstream = downstream;
+            this.kept = kept;
+        }
+
+        public AbstractProject getUpstream() {
+            return upstream;
+        }
+
+        public AbstractProject getDownstream() {
+            return downstream;
+        }
+
+        public boolean isKept() {
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+import hudson.plugins.gradle.model.GradleDependencyInfo;
+import hudson.plugins.gradle.model.GradleDependencyInfoFactory;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Resolves the dependency model of a Gradle build file on the node that holds it, so the Tooling API runs next to
+ * the workspace instead of on the controller, and only the resulting {@link GradleDependencyInfo} travels back.
+ * Build files on the controller itself are resolved by the {@link GradleResolverPool} out of process.
+ */
+public class GradleDependencyResolver implements FilePath.FileCallable<GradleDependencyInfo> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static GradleDependencyInfo resolve(FilePath buildFile) throws IOException, InterruptedException {
+        if (!buildFile.isRemote() && GradleResolverPool.ENABLED)
+            return GradleResolverPool.get().resolve(new File(buildFile.getRemote()));
+
+        return buildFile.act(new GradleDependencyResolver());
+    }
+
+    public GradleDependencyInfo invoke(File buildFile, VirtualChannel channel) throws IOException, InterruptedException {
+        return new GradleDependencyInfoFactory().newInstance(buildFile);
+    }
+}
@@ -0,0 +1,244 @@
+package hudson.plugins.gradle;
+
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.*;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-side cache of Gradle distribution archives.
+ *
+ * Each distribution is fetched from its upstream URL once, verified against the published SHA-256 checksum and
+ * kept under {@code $JENKINS_HOME/gradle-distributions} (or the directory given by the
+ * {@code hudson.plugins.gradle.GradleDistributionMirror.dir} system property). Agents are then served from the
+ * local copy over the remoting channel. The directory may be pre-seeded with {@code gradle-<version>-bin.zip}
+ * archives (optionally with a {@code .sha256} file next to them) to install fully offline.
+ */
+public class GradleDistributionMirror {
+
+    private static final Logger LOGGER = Logger.getLogger(GradleDistributionMirror.class.getName());
+
+    public static final String CHECKSUM_EXTENSION = ".sha256";
+
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    private static final Set<String> verified = Collections.synchronizedSet(new HashSet<String>());
+
+    private final File root;
+
+    public GradleDistributionMirror(File root) {
+        this.root = root;
+    }
+
+    public static GradleDistributionMirror get() {
+        String dir = System.getProperty(GradleDistributionMirror.class.getName() + ".dir");
+
+        if (dir != null && dir.trim().length() > 0)
+            return new GradleDistributionMirror(new File(dir.trim()));
+
+        return new GradleDistributionMirror(new File(Hudson.getInstance().getRootDir(), "gradle-distributions"));
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Finds a pre-seeded archive for the given Gradle version, e.g. when the tool metadata is not available.
+     *
+     * @return the archive or null if the mirror doesn't contain it
+     */
+    public File find(String version) {
+        for (String type : new String[]{"bin", "all"}) {
+            File archive = new File(root, "gradle-" + version + "-" + type + ".zip");
+
+            if (archive.isFile())
+                return archive;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the local copy of the distribution published at the given URL, downloading it first if necessary.
+     *
+     * @return the verified archive or null if it could neither be found locally nor downloaded
+     */
+    public File fetch(String url, TaskListener log) {
+        File archive = new File(root, fileName(url));
+
+        synchronized (lockFor(archive)) {
+            if (archive.isFile()) {
+                if (verify(archive, log))
+                    return archive;
+
+                log.getLogger().println("Discarding corrupt Gradle distribution " + archive);
+                archive.delete();
+            }
+
+            try {
+                download(url, archive, log);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not mirror " + url, e);
+                log.getLogger().println("Could not mirror " + url + ": " + e.getMessage());
+                return null;
+            }
+
+            return archive;
+        }
+    }
+
+    private void download(String url, File archive, TaskListener log) throws IOException {
+        if (!root.isDirectory() && !root.mkdirs())
+            throw new IOException("Could not create " + root);
+
+        String expected = readRemoteChecksum(url);
+
+        log.getLogger().println("Mirroring " + url + " to " + archive);
+
+        File tmp = new File(root, archive.getName() + ".tmp");
+        MessageDigest digest = newDigest();
+
+        InputStream in = new DigestInputStream(ProxyConfiguration.open(new URL(url)).getInputStream(), digest);
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                IOUtils.copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        String actual = Util.toHexString(digest.digest());
+
+        if (expected != null && !expected.equalsIgnoreCase(actual)) {
+            tmp.delete();
+            throw new IOException("Checksum mismatch for " + url + ": expected " + expected + " but was " + actual);
+        }
+
+        if (expected == null)
+            LOGGER.log(Level.INFO, "No checksum published for " + url + ", recording the downloaded one");
+
+        writeChecksum(archive, actual);
+
+        if (archive.exists())
+            archive.delete();
+
+        if (!tmp.renameTo(archive))
+            throw new IOException("Could not move " + tmp + " to " + archive);
+
+        verified.add(archive.getAbsolutePath());
+    }
+
+    /**
+     * Verifies the archive against the checksum file next to it, once per archive and JVM.
+     */
+    private boolean verify(File archive, TaskListener log) {
+        if (verified.contains(archive.getAbsolutePath()))
+            return true;
+
+        File checksumFile = new File(archive.getPath() + CHECKSUM_EXTENSION);
+
+        try {
+            String actual = checksum(archive);
+
+            if (checksumFile.isFile()) {
+                String expected = readChecksum(new FileInputStream(checksumFile));
+
+                if (!actual.equalsIgnoreCase(expected)) {
+                    log.getLogger().println("Checksum mismatch for " + archive + ": expected " + expected + " but was " + actual);
+                    return false;
+                }
+            } else {
+                // pre-seeded without a checksum, trust it from now on
+                writeChecksum(archive, actual);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not verify " + archive, e);
+            return false;
+        }
+
+        verified.add(archive.getAbsolutePath());
+        return true;
+    }
+
+    private String readRemoteChecksum(String url) {
+        try {
+            return readChecksum(ProxyConfiguration.open(new URL(url + CHECKSUM_EXTENSION)).getInputStream());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "No checksum available for " + url, e);
+            return null;
+        }
+    }
+
+    private static String readChecksum(InputStream in) throws IOException {
+        try {
+            String content = IOUtils.toString(in, "US-ASCII").trim();
+            // tolerate the "<checksum>  <file name>" format of sha256sum
+            int space = content.indexOf(' ');
+            return space > 0 ? content.substring(0, space) : content;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeChecksum(File archive, String checksum) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(archive.getPath() + CHECKSUM_EXTENSION), "US-ASCII");
+        try {
+            writer.write(checksum);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String checksum(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new DigestInputStream(new FileInputStream(file), digest);
+        try {
+            IOUtils.copy(in, new NullOutputStream());
+        } finally {
+            in.close();
+        }
+        return Util.toHexString(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object lockFor(File archive) {
+        Object lock = new Object();
+        Object existing = locks.putIfAbsent(archive.getAbsolutePath(), lock);
+        return existing != null ? existing : lock;
+    }
+
+    static String fileName(String url) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        int query = name.indexOf('?');
+        return query >= 0 ? name.substring(0, query) : name;
+    }
+
+    public static boolean ENABLED = !Boolean.getBoolean(GradleDistributionMirror.class
+            .getName() + ".disabled");
+}
@@ -0,0 +1,53 @@
+package hudson.plugins.gradle;
+
+import hudson.model.InvisibleAction;
+
+import java.util.*;
+
+/**
+ * Records the input fingerprints of the Gradle build steps of a build, keyed by the configuration of the step, and
+ * which of them were skipped because the last successful build had the same inputs. Steps that ran Gradle also
+ * record the output directories they left, which have to be there for a later build to skip the step.
+ */
+public class GradleInputFingerprintAction extends InvisibleAction {
+
+    private final Map<String, String> fingerprints = new HashMap<String, String>();
+    private final Map<String, Integer> reused = new HashMap<String, Integer>();
+    private Map<String, List<String>> outputs;
+
+    public synchronized String getFingerprint(String step) {
+        return fingerprints.get(step);
+    }
+
+    synchronized void setFingerprint(String step, String fingerprint) {
+        fingerprints.put(step, fingerprint);
+    }
+
+    /**
+     * @return the output directories relative to the workspace the step left when it ran Gradle, or null if unknown
+     */
+    public synchronized List<String> getOutputs(String step) {
+        return outputs != null ? outputs.get(step) : null;
+    }
+
+    synchronized void setOutputs(String step, List<String> dirs) {
+        if (outputs == null)
+            outputs = new HashMap<String, List<String>>();
+        outputs.put(step, new ArrayList<String>(dirs));
+    }
+
+    /**
+     * Records that the step was skipped, reusing the result of the given build.
+     */
+    synchronized void setReused(String step, int buildNumber) {
+        reused.put(step, buildNumber);
+    }
+
+    /**
+     * @return the number of the build whose result the step reused, or -1 if Gradle ran
+     */
+    public synchronized int getReusedBuild(String step) {
+        Integer number = reused.get(step);
+        return number != null ? number : -1;
+    }
+}
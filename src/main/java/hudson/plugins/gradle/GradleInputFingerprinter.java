@@ -0,0 +1,264 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Fingerprints the sources and build scripts below a directory, together with inputs from outside the workspace
+ * given by the caller, such as upstream dependency versions and the build step configuration.
+ *
+ * The hashes of the files are cached in the workspace with their size and modification time, so only files that
+ * changed since the previous fingerprint are read again. Version control metadata, the output directories of
+ * Gradle projects and the Gradle user home, when it lies in the workspace, are left out.
+ */
+public class GradleInputFingerprinter implements FilePath.FileCallable<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String CACHE = ".gradle-fingerprint";
+
+    private static final Set<String> IGNORED = new HashSet<String>(Arrays.asList(
+            ".git", ".svn", ".hg", ".bzr", ".gradle", ".idea", CACHE));
+
+    // what Gradle keeps in its user home, ignored when the workspace is the user home
+    private static final Set<String> USER_HOME = new HashSet<String>(Arrays.asList(
+            "caches", "daemon", "native", "notifications", "jdks", "wrapper", "workers", "kotlin-profile",
+            "build-scan-data"));
+
+    private static final String[] BUILD_SCRIPTS = {"build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts"};
+
+    private final String externalInputs;
+    private final String userHome;
+
+    public GradleInputFingerprinter(String externalInputs) {
+        this(externalInputs, null);
+    }
+
+    /**
+     * @param userHome the Gradle user home of the build, or null for the default one outside the workspace
+     */
+    public GradleInputFingerprinter(String externalInputs, String userHome) {
+        this.externalInputs = externalInputs;
+        this.userHome = userHome;
+    }
+
+    public String invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+        File cacheFile = new File(new File(dir, CACHE), "files");
+        Map<String, Entry> cache = readCache(cacheFile);
+        Map<String, Entry> current = new TreeMap<String, Entry>();
+
+        byte[] buffer = new byte[8192];
+        walk(dir, "", getUserHome(), cache, current, buffer);
+
+        MessageDigest digest = newDigest();
+        for (Map.Entry<String, Entry> file : current.entrySet()) {
+            digest.update(file.getKey().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(file.getValue().hash.getBytes("UTF-8"));
+        }
+        digest.update(externalInputs.getBytes("UTF-8"));
+
+        writeCache(cacheFile, current);
+        return Util.toHexString(digest.digest());
+    }
+
+    private File getUserHome() {
+        return userHome != null ? new File(userHome).getAbsoluteFile() : null;
+    }
+
+    /**
+     * Describes a build step by its configuration and the Gradle and JDK running it. The fingerprint of the step is
+     * recorded under this description, so a step running on another Gradle or JDK isn't skipped.
+     *
+     * @param gradleHome the home of the selected Gradle installation, or null
+     * @param javaHome   the JDK of the job, or null for the one on the path
+     */
+    public static String describeStep(String switches, String tasks, String buildFile, String rootBuildScriptDir,
+                                      String gradleName, String gradleHome, boolean useWrapper, String javaHome,
+                                      boolean useToolingApi) {
+        return switches + " " + tasks + " " + Util.fixNull(buildFile) + " " + Util.fixNull(rootBuildScriptDir)
+                + "\ngradle=" + Util.fixNull(gradleName) + " " + Util.fixNull(gradleHome)
+                + "\nwrapper=" + useWrapper
+                + "\njava=" + Util.fixNull(javaHome)
+                + "\ntoolingApi=" + useToolingApi;
+    }
+
+    private static boolean isIgnored(File dir, String name, File userHome) {
+        return IGNORED.contains(name) || name.startsWith(".gradle-")
+                || userHome != null && (userHome.equals(new File(dir, name).getAbsoluteFile())
+                || userHome.equals(dir.getAbsoluteFile()) && USER_HOME.contains(name));
+    }
+
+    private void walk(File dir, String prefix, File userHome, Map<String, Entry> cache, Map<String, Entry> current,
+                      byte[] buffer) throws IOException, InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        String[] names = dir.list();
+        if (names == null)
+            return;
+
+        boolean gradleProject = isGradleProject(dir);
+
+        for (String name : names) {
+            File file = new File(dir, name);
+            String path = prefix + name;
+
+            if (isIgnored(dir, name, userHome))
+                continue;
+
+            if (file.isDirectory()) {
+                if (gradleProject && (name.equals("build") || name.equals("out")))
+                    continue; // outputs
+
+                walk(file, path + "/", userHome, cache, current, buffer);
+            } else {
+                long size = file.length();
+                long modified = file.lastModified();
+                Entry entry = cache.get(path);
+
+                if (entry == null || entry.size != size || entry.modified != modified)
+                    entry = new Entry(size, modified, hash(file, buffer));
+
+                current.put(path, entry);
+            }
+        }
+    }
+
+    /**
+     * Lists the output directories of the Gradle projects below a directory, relative to it.
+     */
+    public static class Outputs implements FilePath.FileCallable<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String userHome;
+
+        public Outputs(String userHome) {
+            this.userHome = userHome;
+        }
+
+        public List<String> invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+            List<String> outputs = new ArrayList<String>();
+            collect(dir, "", userHome != null ? new File(userHome).getAbsoluteFile() : null, outputs);
+            Collections.sort(outputs);
+            return outputs;
+        }
+
+        private static void collect(File dir, String prefix, File userHome, List<String> outputs)
+                throws InterruptedException {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            String[] names = dir.list();
+            if (names == null)
+                return;
+
+            boolean gradleProject = isGradleProject(dir);
+
+            for (String name : names) {
+                File file = new File(dir, name);
+
+                if (isIgnored(dir, name, userHome) || !file.isDirectory())
+                    continue;
+
+                if (gradleProject && name.equals("build"))
+                    outputs.add(prefix + name);
+                else if (!gradleProject || !name.equals("out"))
+                    collect(file, prefix + name + "/", userHome, outputs);
+            }
+        }
+    }
+
+    private static boolean isGradleProject(File dir) {
+        for (String script : BUILD_SCRIPTS) {
+            if (new File(dir, script).isFile())
+                return true;
+        }
+        return false;
+    }
+
+    private static String hash(File file, byte[] buffer) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+
+        return Util.toHexString(digest.digest());
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static Map<String, Entry> readCache(File cacheFile) {
+        Map<String, Entry> cache = new HashMap<String, Entry>();
+
+        if (!cacheFile.isFile())
+            return cache;
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // size, modification time, hash, path
+                    String[] fields = line.split("\t", 4);
+                    if (fields.length == 4)
+                        cache.put(fields[3], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            cache.clear(); // everything is hashed again
+        } catch (NumberFormatException e) {
+            cache.clear();
+        }
+
+        return cache;
+    }
+
+    private static void writeCache(File cacheFile, Map<String, Entry> entries) throws IOException {
+        cacheFile.getParentFile().mkdirs();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(cacheFile), "UTF-8"));
+
+        try {
+            for (Map.Entry<String, Entry> file : entries.entrySet()) {
+                Entry entry = file.getValue();
+                writer.write(entry.size + "\t" + entry.modified + "\t" + entry.hash + "\t" + file.getKey() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final String hash;
+
+        private Entry(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package hudson.plugins.gradle;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Installs the configured {@link GradleInstallation}s on a node as soon as it comes online, so the
+ * first build on a fresh agent doesn't pay for the download and unpacking of the distribution.
+ *
+ * Builds only block on the pre-warming when it is still running for their node. Agents on one host sharing a tool
+ * directory install into it one at a time, see {@link GradleInstaller}, and the archive they unpack is downloaded once
+ * into the {@link GradleDistributionMirror} of the controller.
+ */
+@Extension
+public class GradleInstallationPrewarmer extends ComputerListener {
+
+    private static final Logger LOGGER = Logger.getLogger(GradleInstallationPrewarmer.class.getName());
+
+    static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    private static final Map<String, Future<?>> pending = new ConcurrentHashMap<String, Future<?>>();
+
+    @Override
+    public void onOnline(Computer c, TaskListener listener) {
+        if (!ENABLED)
+            return;
+
+        final Node node = c.getNode();
+        if (node == null)
+            return;
+
+        final GradleInstallation[] installations = Hudson.getInstance().getDescriptorByType(Gradle.DescriptorImpl.class).getInstallations();
+        if (installations.length == 0)
+            return;
+
+        final String nodeName = node.getNodeName();
+
+        synchronized (pending) {
+            Future<?> running = pending.get(nodeName);
+            if (running != null && !running.isDone())
+                return; // already pre-warming this node
+
+            pending.put(nodeName, EXECUTOR.submit(new Runnable() {
+                public void run() {
+                    TaskListener log = new LogTaskListener(LOGGER, Level.FINE);
+
+                    for (GradleInstallation installation : installations) {
+                        try {
+                            LOGGER.log(Level.FINE, "Pre-warming " + installation.getName() + " on " + nodeName);
+                            installation.forNode(node, log);
+                        } catch (Exception e) {
+                            // the build will retry the installation itself
+                            LOGGER.log(Level.WARNING, "Could not pre-warm " + installation.getName() + " on " + nodeName, e);
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Blocks until pre-warming of the given node is finished, if it is still in progress.
+     */
+    public static void awaitPrewarm(Node node, TaskListener listener) throws InterruptedException {
+        if (node == null)
+            return;
+
+        Future<?> running = pending.get(node.getNodeName());
+
+        if (running == null || running.isDone())
+            return;
+
+        new GradleLogger(listener).info("Waiting for Gradle installations to finish pre-warming on this node.");
+
+        try {
+            running.get();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.FINE, "Pre-warming failed", e);
+        }
+    }
+
+    public static boolean ENABLED = !Boolean.getBoolean(GradleInstallationPrewarmer.class
+            .getName() + ".disabled");
+}
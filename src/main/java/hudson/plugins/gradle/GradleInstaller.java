@@ -1,19 +1,134 @@
 package hudson.plugins.gradle;
 
 import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
 import hudson.tools.DownloadFromUrlInstaller;
 import hudson.tools.ToolInstallation;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * @author Kohsuke Kawaguchi
  */
 public class GradleInstaller extends DownloadFromUrlInstaller {
+
+    private static final String INSTALLED_FROM = ".installedFrom";
+
+    private static final long STALE_LOCK_MILLIS = 30 * 60 * 1000L;
+
     @DataBoundConstructor
     public GradleInstaller(String id) {
         super(id);
     }
 
+    /**
+     * Installs from the controller's {@link GradleDistributionMirror} and falls back to the upstream URL
+     * if the mirror can't provide the distribution. Installations into the same directory, which agents running on
+     * one host may share, take turns through a lock file next to it.
+     */
+    @Override
+    public FilePath performInstallation(ToolInstallation tool, Node node, TaskListener log) throws IOException, InterruptedException {
+        FilePath expected = preferredLocation(tool, node);
+        FilePath lock = expected.sibling(expected.getName() + ".lock");
+
+        for (boolean waiting = false; !lock.act(new Lock()); waiting = true) {
+            if (!waiting)
+                log.getLogger().println("Waiting for another installation into " + expected + " on " + node.getDisplayName());
+            Thread.sleep(1000);
+        }
+
+        try {
+            return install(tool, node, log, expected);
+        } finally {
+            lock.delete();
+        }
+    }
+
+    private FilePath install(ToolInstallation tool, Node node, TaskListener log, FilePath expected) throws IOException, InterruptedException {
+        if (!GradleDistributionMirror.ENABLED)
+            return super.performInstallation(tool, node, log);
+
+        GradleDistributionMirror mirror = GradleDistributionMirror.get();
+
+        Installable inst = getInstallable();
+        String source;
+        File archive;
+
+        if (inst != null) {
+            if (isUpToDate(expected, inst))
+                return expected;
+
+            source = inst.url;
+            archive = mirror.fetch(inst.url, log);
+        } else {
+            // no tool metadata (e.g. offline), try a pre-seeded archive
+            archive = mirror.find(id);
+
+            if (archive == null)
+                return super.performInstallation(tool, node, log);
+
+            source = archive.toURI().toString();
+
+            FilePath marker = expected.child(INSTALLED_FROM);
+            if (marker.exists() && marker.readToString().equals(source))
+                return expected;
+        }
+
+        if (archive == null)
+            return super.performInstallation(tool, node, log);
+
+        log.getLogger().println("Unpacking " + archive + " to " + expected + " on " + node.getDisplayName());
+
+        expected.mkdirs();
+        expected.deleteContents();
+
+        InputStream in = new FileInputStream(archive);
+        try {
+            expected.unzipFrom(in);
+        } finally {
+            in.close();
+        }
+
+        FilePath base = findPullUpDirectory(expected);
+        if (base != null && base != expected)
+            base.moveAllChildrenTo(expected);
+
+        FilePath bin = expected.child("bin").child(GradleInstallation.UNIX_GRADLE_COMMAND);
+        if (bin.exists())
+            bin.chmod(0755);
+
+        // leave a record for the next up-to-date check
+        expected.child(INSTALLED_FROM).write(source, "UTF-8");
+
+        return expected;
+    }
+
+    /**
+     * Creates the lock file unless it exists, taking over one left behind by an installation that died.
+     */
+    private static final class Lock implements FilePath.FileCallable<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Boolean invoke(File lock, VirtualChannel channel) throws IOException {
+            File dir = lock.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Could not create " + dir);
+
+            if (lock.createNewFile())
+                return true;
+
+            return System.currentTimeMillis() - lock.lastModified() > STALE_LOCK_MILLIS && lock.delete() && lock.createNewFile();
+        }
+    }
+
     @Extension
     public static final class DescriptorImpl extends DownloadFromUrlInstaller.DescriptorImpl<GradleInstaller> {
         public String getDisplayName() {
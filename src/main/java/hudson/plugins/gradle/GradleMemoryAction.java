@@ -0,0 +1,101 @@
+package hudson.plugins.gradle;
+
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.InvisibleAction;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Records the memory a Gradle build reserved on its node, how long it waited for it and the footprint Gradle
+ * reported at the end of the build. The footprints of the last builds are the estimate for the next one.
+ */
+@ExportedBean
+public class GradleMemoryAction extends InvisibleAction {
+
+    public static int DEFAULT_FOOTPRINT_MB = Integer.getInteger(GradleMemoryAction.class.getName() + ".defaultFootprintMb", 1024);
+
+    /** number of previous builds the estimate looks at */
+    public static int HISTORY = 5;
+
+    // project -> {number of the last build, estimate}, so the queue doesn't load builds over and over
+    private static final Map<AbstractProject<?, ?>, long[]> estimates = new WeakHashMap<AbstractProject<?, ?>, long[]>();
+
+    private final String nodeName;
+    private final long reservedMb;
+    private final long waitMillis;
+    private long footprintMb = -1;
+
+    public GradleMemoryAction(String nodeName, long reservedMb, long waitMillis) {
+        this.nodeName = nodeName;
+        this.reservedMb = reservedMb;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * @return the largest footprint reported by the last builds of the project, or the default if none reported one
+     */
+    public static long estimate(AbstractProject<?, ?> project) {
+        AbstractBuild<?, ?> last = project.getLastCompletedBuild();
+        long number = last != null ? last.getNumber() : -1;
+
+        synchronized (estimates) {
+            long[] known = estimates.get(project);
+            if (known != null && known[0] == number)
+                return known[1];
+        }
+
+        long estimate = -1;
+        AbstractBuild<?, ?> build = last;
+
+        for (int i = 0; build != null && i < HISTORY; i++, build = build.getPreviousBuild()) {
+            GradleMemoryAction action = build.getAction(GradleMemoryAction.class);
+            if (action != null)
+                estimate = Math.max(estimate, action.getFootprintMb());
+        }
+
+        if (estimate <= 0)
+            estimate = DEFAULT_FOOTPRINT_MB;
+
+        synchronized (estimates) {
+            estimates.put(project, new long[]{number, estimate});
+        }
+
+        return estimate;
+    }
+
+    @Exported
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    @Exported
+    public long getReservedMb() {
+        return reservedMb;
+    }
+
+    @Exported
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    public String getWaitTimeString() {
+        return Util.getTimeSpanString(waitMillis);
+    }
+
+    /**
+     * @return the peak memory committed by the Gradle JVM, or -1 if it wasn't reported
+     */
+    @Exported
+    public long getFootprintMb() {
+        return footprintMb;
+    }
+
+    void setFootprintMb(long footprintMb) {
+        this.footprintMb = footprintMb;
+    }
+}
@@ -0,0 +1,243 @@
+package hudson.plugins.gradle;
+
+import hudson.Extension;
+import hudson.model.*;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.remoting.VirtualChannel;
+import hudson.tasks.Builder;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Admits Gradle builds to a node only as far as their estimated memory footprints fit into a share of the node's
+ * physical memory, so concurrent builds don't push the node into swapping or the OOM killer.
+ *
+ * A build that doesn't fit waits in its build step until enough memory is released. Builds that are still queued
+ * are kept off nodes whose budget is exhausted, see {@link Dispatcher}, so they go to another node if one has room.
+ * A build is always admitted to a node without other admitted builds, even if its estimate exceeds the budget.
+ */
+public class GradleMemoryBudget {
+
+    /** share of the physical memory of a node available to Gradle builds */
+    public static int BUDGET_PERCENT = Integer.getInteger(GradleMemoryBudget.class.getName() + ".budgetPercent", 80);
+
+    private static final GradleMemoryBudget INSTANCE = new GradleMemoryBudget();
+
+    private final Map<String, NodeBudget> nodes = new TreeMap<String, NodeBudget>();
+
+    public static GradleMemoryBudget get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reserves the estimated footprint of a build on the node, waiting until it fits.
+     *
+     * @return the lease to release when Gradle finished, or null if the memory of the node is unknown
+     */
+    public Lease acquire(AbstractBuild<?, ?> build, String nodeName, VirtualChannel channel, TaskListener listener)
+            throws IOException, InterruptedException {
+        long memoryMb = channel.call(new GradleResourceTuner.Probe())[1];
+
+        if (memoryMb <= 0)
+            return null;
+
+        long requestMb = GradleMemoryAction.estimate(build.getProject());
+        long started = System.currentTimeMillis();
+        long waited;
+        NodeBudget budget;
+
+        synchronized (this) {
+            budget = nodes.get(nodeName);
+            if (budget == null) {
+                budget = new NodeBudget(nodeName);
+                nodes.put(nodeName, budget);
+            }
+            budget.capacityMb = memoryMb * BUDGET_PERCENT / 100;
+
+            if (!budget.fits(requestMb)) {
+                new GradleLogger(listener).info("Waiting for " + requestMb + "m of memory on the node, "
+                        + budget.reservedMb + "m of " + budget.capacityMb + "m are taken by other Gradle builds.");
+
+                while (!budget.fits(requestMb)) {
+                    wait();
+                }
+            }
+
+            budget.reservedMb += requestMb;
+            budget.admitted++;
+
+            waited = System.currentTimeMillis() - started;
+            budget.recordWait(waited);
+        }
+
+        GradleMemoryAction action = new GradleMemoryAction(nodeName, requestMb, waited);
+        build.addAction(action);
+
+        return new Lease(budget, requestMb, action);
+    }
+
+    public synchronized void release(Lease lease) {
+        lease.budget.reservedMb -= lease.reservedMb;
+        notifyAll();
+    }
+
+    /**
+     * Checks whether a build with the given footprint would be admitted to the node right now. Nodes no build was
+     * admitted to yet have an unknown budget and always fit.
+     */
+    public synchronized boolean fits(String nodeName, long requestMb) {
+        NodeBudget budget = nodes.get(nodeName);
+        return budget == null || budget.fits(requestMb);
+    }
+
+    public synchronized List<NodeBudget> getNodes() {
+        return new ArrayList<NodeBudget>(nodes.values());
+    }
+
+    public static final class Lease {
+        private final NodeBudget budget;
+        private final long reservedMb;
+        private final GradleMemoryAction action;
+
+        private Lease(NodeBudget budget, long reservedMb, GradleMemoryAction action) {
+            this.budget = budget;
+            this.reservedMb = reservedMb;
+            this.action = action;
+        }
+
+        public GradleMemoryAction getAction() {
+            return action;
+        }
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static final class NodeBudget {
+        private final String nodeName;
+        private long capacityMb;
+        private long reservedMb;
+        private long admitted;
+        private long waited;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+
+        private NodeBudget(String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        private boolean fits(long requestMb) {
+            return reservedMb == 0 || reservedMb + requestMb <= capacityMb;
+        }
+
+        private void recordWait(long millis) {
+            if (millis <= 0)
+                return;
+
+            waited++;
+            totalWaitMillis += millis;
+            maxWaitMillis = Math.max(maxWaitMillis, millis);
+        }
+
+        @Exported
+        public String getNodeName() {
+            return nodeName;
+        }
+
+        @Exported
+        public long getCapacityMb() {
+            return capacityMb;
+        }
+
+        @Exported
+        public long getReservedMb() {
+            return reservedMb;
+        }
+
+        /** builds admitted since startup */
+        @Exported
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        /** admitted builds that had to wait */
+        @Exported
+        public long getWaited() {
+            return waited;
+        }
+
+        @Exported
+        public long getTotalWaitMillis() {
+            return totalWaitMillis;
+        }
+
+        @Exported
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+    }
+
+    /**
+     * Keeps queued Gradle builds using memory admission off nodes whose budget can't take them right now.
+     */
+    @Extension
+    public static class Dispatcher extends QueueTaskDispatcher {
+
+        @Override
+        public CauseOfBlockage canTake(final Node node, Queue.BuildableItem item) {
+            if (!(item.task instanceof Project) || !usesMemoryAdmission((Project) item.task))
+                return null;
+
+            final long requestMb = GradleMemoryAction.estimate((Project) item.task);
+
+            if (INSTANCE.fits(node.getNodeName(), requestMb))
+                return null;
+
+            return new CauseOfBlockage() {
+                @Override
+                public String getShortDescription() {
+                    return "Waiting for " + requestMb + "m of memory for Gradle on " + node.getDisplayName();
+                }
+            };
+        }
+
+        private boolean usesMemoryAdmission(Project<?, ?> project) {
+            for (Builder builder : project.getBuilders()) {
+                if (builder instanceof Gradle && ((Gradle) builder).isMemoryAdmission())
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Exposes the budgets and admission wait times of all nodes at <tt>/gradle-memory/api/</tt>.
+     */
+    @Extension
+    @ExportedBean
+    public static class Metrics implements RootAction {
+
+        public String getIconFileName() {
+            return null;
+        }
+
+        public String getDisplayName() {
+            return "Gradle memory budgets";
+        }
+
+        public String getUrlName() {
+            return "gradle-memory";
+        }
+
+        @Exported(inline = true)
+        public List<NodeBudget> getNodes() {
+            return INSTANCE.getNodes();
+        }
+
+        public Api getApi() {
+            return new Api(this);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+
+import java.io.IOException;
+
+/**
+ * Makes Gradle report the peak memory committed by its JVM at the end of the build, through an init script
+ * writing it to a file in the workspace. For a daemon the peak covers all builds it ran so far, which errs on the
+ * safe side.
+ *
+ * The JVMs Gradle forks are added by their maximum heap: one per parallel fork of each test task and one per
+ * compile task forking the compiler, 512 MB if not configured, and as many of the largest as Gradle runs workers at
+ * once. Worker processes of other tasks and memory beyond the heap of forked JVMs aren't included.
+ */
+public class GradleMemoryFootprint {
+
+    public static final String DIR = ".gradle-memory";
+
+    private static final String INIT_SCRIPT =
+            "def forkedHeaps = []\n" +
+            "def toMb = { size ->\n" +
+            "    def m = size == null ? null : (size.toString().trim().toLowerCase() =~ /^(\\d+)([kmgt]?)$/)\n" +
+            "    if (!m)\n" +
+            "        return 512L\n" +
+            "    long n = m[0][1] as long\n" +
+            "    switch (m[0][2]) {\n" +
+            "        case 'k': return n.intdiv(1024)\n" +
+            "        case 'm': return n\n" +
+            "        case 'g': return n * 1024\n" +
+            "        case 't': return n * 1024 * 1024\n" +
+            "        default: return n.intdiv(1024 * 1024)\n" +
+            "    }\n" +
+            "}\n" +
+            "gradle.taskGraph.afterTask { task ->\n" +
+            "    if (!task.state.didWork)\n" +
+            "        return\n" +
+            "    if (task instanceof org.gradle.api.tasks.testing.Test) {\n" +
+            "        task.maxParallelForks.times { forkedHeaps << toMb(task.maxHeapSize) }\n" +
+            "    } else if (task.hasProperty('options') && task.options.hasProperty('fork') && task.options.fork\n" +
+            "            && task.options.hasProperty('forkOptions')) {\n" +
+            "        forkedHeaps << toMb(task.options.forkOptions.memoryMaximumSize)\n" +
+            "    }\n" +
+            "}\n" +
+            "gradle.buildFinished {\n" +
+            "    long committed = 0\n" +
+            "    for (pool in java.lang.management.ManagementFactory.memoryPoolMXBeans) {\n" +
+            "        if (pool.peakUsage != null)\n" +
+            "            committed += pool.peakUsage.committed\n" +
+            "    }\n" +
+            "    int workers = gradle.startParameter.hasProperty('maxWorkerCount')\n" +
+            "            ? gradle.startParameter.maxWorkerCount : Runtime.runtime.availableProcessors()\n" +
+            "    long forked = forkedHeaps.sort { -it }.take(workers).sum(0L)\n" +
+            "    new File(@FOOTPRINT@).text = String.valueOf(committed.intdiv(1024 * 1024) + forked)\n" +
+            "}\n";
+
+    private final FilePath dir;
+
+    public GradleMemoryFootprint(FilePath workspace) {
+        this.dir = workspace.child(DIR);
+    }
+
+    /**
+     * @return the init script to pass with {@code --init-script}
+     */
+    public FilePath writeInitScript() throws IOException, InterruptedException {
+        dir.mkdirs();
+        getReport().delete();
+
+        String report = "'" + getReport().getRemote().replace("\\", "\\\\").replace("'", "\\'") + "'";
+        FilePath initScript = dir.child("footprint.gradle");
+        initScript.write(INIT_SCRIPT.replace("@FOOTPRINT@", report), "UTF-8");
+        return initScript;
+    }
+
+    /**
+     * @return the reported footprint in megabytes, or -1 if Gradle didn't report one
+     */
+    public long read() throws IOException, InterruptedException {
+        FilePath report = getReport();
+
+        if (!report.exists())
+            return -1;
+
+        try {
+            return Long.parseLong(report.readToString().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private FilePath getReport() {
+        return dir.child("footprint");
+    }
+}
@@ -0,0 +1,115 @@
+package hudson.plugins.gradle;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SCMListener;
+import hudson.plugins.gradle.model.GradleDependencyInfo;
+import hudson.scm.ChangeLogSet;
+import hudson.util.DaemonThreadFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the dependency model of a job in the background as soon as a checkout brings changes to its Gradle build
+ * files, so the dependency graph is up to date while the build is still running and {@link GradleBuildTrigger} only
+ * has to wait for the result instead of resolving after the build.
+ */
+public class GradlePreResolver extends SCMListener {
+
+    private static final Logger LOGGER = Logger.getLogger(GradlePreResolver.class.getName());
+
+    public static boolean ENABLED = !Boolean.getBoolean(GradlePreResolver.class.getName() + ".disabled");
+
+    public static int THREADS = Integer.getInteger(GradlePreResolver.class.getName() + ".threads", 2);
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(1, THREADS), new DaemonThreadFactory());
+
+    private static final Map<AbstractBuild<?, ?>, Future<?>> PENDING =
+            Collections.synchronizedMap(new HashMap<AbstractBuild<?, ?>, Future<?>>());
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void init() {
+        new GradlePreResolver().register();
+    }
+
+    @Override
+    public void onChangeLogParsed(final AbstractBuild<?, ?> build, BuildListener listener, ChangeLogSet<?> changelog) {
+        if (!ENABLED)
+            return;
+
+        final GradleBuildTrigger trigger = GradleBuildTrigger.getGradleBuildTrigger(build.getProject());
+
+        if (trigger == null || !touchesBuildFiles(changelog))
+            return;
+
+        new GradleLogger(listener).info("Gradle build files changed, resolving the dependencies in the background");
+
+        PENDING.put(build, EXECUTOR.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                List<GradleDependencyInfo> infos = trigger.resolveAllGradleDependencyInfo(build.getProject());
+                trigger.updateGradleDependencyInfo(build.getProject(), infos);
+                return null;
+            }
+        }));
+    }
+
+    static boolean touchesBuildFiles(ChangeLogSet<?> changelog) {
+        for (ChangeLogSet.Entry entry : changelog) {
+            for (String path : entry.getAffectedPaths()) {
+                if (isBuildFile(path))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isBuildFile(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return name.endsWith(".gradle") || name.endsWith(".gradle.kts") || name.equals("gradle.properties");
+    }
+
+    /**
+     * Waits for the background resolution started for the build, if any.
+     *
+     * @return true if the dependencies of the build were resolved in the background
+     */
+    static boolean await(AbstractBuild<?, ?> build) throws InterruptedException {
+        Future<?> resolution = PENDING.remove(build);
+
+        if (resolution == null)
+            return false;
+
+        try {
+            resolution.get();
+            return true;
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Background resolution for " + build.getFullDisplayName() + " failed", e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Forgets the resolution of a build that never reached {@link GradleBuildTrigger}, such as one aborted before its
+     * publishers ran.
+     */
+    @Extension
+    public static class Cleanup extends RunListener<AbstractBuild> {
+
+        public Cleanup() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            PENDING.remove(build);
+        }
+    }
+}
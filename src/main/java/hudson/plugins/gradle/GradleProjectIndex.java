@@ -0,0 +1,148 @@
+package hudson.plugins.gradle;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.Project;
+import hudson.model.listeners.ItemListener;
+
+import java.util.*;
+
+/**
+ * The free-style jobs of Jenkins by case-insensitive name, kept up to date as jobs are created, copied, renamed
+ * and deleted, so looking a job up or listing all of them doesn't walk the whole item tree.
+ */
+@Extension
+public class GradleProjectIndex extends ItemListener {
+
+    private static final Object LOCK = new Object();
+
+    // lower-case name -> jobs with that name, in different folders
+    private static Map<String, List<Project>> byName;
+    private static volatile List<Project> projects;
+
+    /**
+     * @return the first job with the name, ignoring case, or null if there is none
+     */
+    public static Project getProject(String name) {
+        synchronized (LOCK) {
+            List<Project> matches = index().get(name.toLowerCase(Locale.ENGLISH));
+            return matches != null ? matches.get(0) : null;
+        }
+    }
+
+    public static List<Project> getProjects() {
+        List<Project> snapshot = projects;
+
+        if (snapshot == null) {
+            synchronized (LOCK) {
+                index();
+                snapshot = projects;
+            }
+        }
+
+        return snapshot;
+    }
+
+    private static Map<String, List<Project>> index() {
+        if (byName == null) {
+            byName = new LinkedHashMap<String, List<Project>>();
+
+            for (Project p : Hudson.getInstance().getAllItems(Project.class)) {
+                add(p.getName(), p);
+            }
+
+            snapshot();
+        }
+
+        return byName;
+    }
+
+    private static void add(String name, Project project) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        List<Project> matches = byName.get(key);
+
+        if (matches == null) {
+            matches = new ArrayList<Project>(1);
+            byName.put(key, matches);
+        }
+
+        matches.add(project);
+    }
+
+    private static void remove(String name, Project project) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        List<Project> matches = byName.get(key);
+
+        if (matches != null && matches.remove(project) && matches.isEmpty())
+            byName.remove(key);
+    }
+
+    private static void snapshot() {
+        List<Project> all = new ArrayList<Project>();
+
+        for (List<Project> matches : byName.values()) {
+            all.addAll(matches);
+        }
+
+        projects = Collections.unmodifiableList(all);
+    }
+
+    @Override
+    public void onLoaded() {
+        synchronized (LOCK) {
+            byName = null;
+            index();
+        }
+    }
+
+    @Override
+    public void onCreated(Item item) {
+        if (!(item instanceof Project))
+            return;
+
+        synchronized (LOCK) {
+            if (byName != null) {
+                add(item.getName(), (Project) item);
+                snapshot();
+            }
+        }
+    }
+
+    @Override
+    public void onCopied(Item src, Item item) {
+        onCreated(item);
+    }
+
+    @Override
+    public void onRenamed(Item item, String oldName, String newName) {
+        if (!(item instanceof Project))
+            return;
+
+        synchronized (LOCK) {
+            if (byName != null) {
+                remove(oldName, (Project) item);
+                add(newName, (Project) item);
+                snapshot();
+            }
+        }
+
+        String parent = item.getParent().getFullName();
+        GradleBuildTrigger.forget(parent.length() > 0 ? parent + "/" + oldName : oldName);
+    }
+
+    @Override
+    public void onDeleted(Item item) {
+        if (!(item instanceof Project))
+            return;
+
+        synchronized (LOCK) {
+            if (byName != null) {
+                remove(item.getName(), (Project) item);
+                snapshot();
+            }
+        }
+
+        GradleBuildTrigger.forget(item.getFullName());
+    }
+}
@@ -0,0 +1,85 @@
+package hudson.plugins.gradle;
+
+import hudson.Util;
+import hudson.model.InvisibleAction;
+import hudson.plugins.gradle.model.Dependency;
+
+import java.util.*;
+
+/**
+ * Content hashes of the artifacts published by a build, used to skip downstream builds when a rebuild produced the
+ * same artifacts as the build the downstream project was last built against.
+ */
+public class GradlePublicationHashAction extends InvisibleAction {
+
+    // group:name -> hash of the artifacts of the project publishing it
+    private final Map<String, String> hashes;
+
+    private final Map<String, Long> suppressed = new TreeMap<String, Long>();
+
+    public GradlePublicationHashAction(Map<String, String> hashes) {
+        this.hashes = new HashMap<String, String>(hashes);
+    }
+
+    static String key(Dependency dependency) {
+        return dependency.getGroup() + ":" + dependency.getName();
+    }
+
+    public String getHash(Dependency publication) {
+        return hashes.get(key(publication));
+    }
+
+    /**
+     * Checks whether the given publications have the same content in this and the other build.
+     *
+     * @param publications the publications to compare or null to compare all of them
+     */
+    public boolean isUnchanged(GradlePublicationHashAction other, Collection<Dependency> publications) {
+        Collection<String> keys = hashes.keySet();
+
+        if (publications != null) {
+            keys = new ArrayList<String>();
+            for (Dependency publication : publications) {
+                keys.add(key(publication));
+            }
+        }
+
+        if (keys.isEmpty())
+            return false;
+
+        for (String key : keys) {
+            String hash = hashes.get(key);
+
+            if (hash == null || !hash.equals(other.hashes.get(key)))
+                return false;
+        }
+
+        return true;
+    }
+
+    public synchronized void addSuppressed(String projectName, long estimatedMillis) {
+        suppressed.put(projectName, Math.max(0, estimatedMillis));
+    }
+
+    /**
+     * @return the downstream projects that weren't built because nothing they use changed
+     */
+    public synchronized Set<String> getSuppressedProjects() {
+        return new TreeSet<String>(suppressed.keySet());
+    }
+
+    /**
+     * @return the estimated executor time saved by not building the suppressed downstream projects
+     */
+    public synchronized long getSavedMillis() {
+        long saved = 0;
+        for (long millis : suppressed.values()) {
+            saved += millis;
+        }
+        return saved;
+    }
+
+    public String getSavedTimeString() {
+        return Util.getTimeSpanString(getSavedMillis());
+    }
+}
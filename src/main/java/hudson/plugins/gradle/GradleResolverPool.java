@@ -0,0 +1,193 @@
+package hudson.plugins.gradle;
+
+import hudson.plugins.gradle.model.GradleDependencyInfo;
+import hudson.plugins.gradle.model.GradleDependencyInfoWorker;
+import hudson.remoting.Which;
+import hudson.util.DaemonThreadFactory;
+import org.gradle.tooling.GradleConnector;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of child JVMs resolving dependency models of build files on the controller, so build scripts run by the
+ * Tooling API can neither exhaust the heap of the controller nor stall it.
+ *
+ * The number of workers, their heap and the heap of the Gradle daemons running the build scripts are bounded. A
+ * resolution taking longer than the timeout or whose caller is interrupted is cancelled in the daemon and kills its
+ * worker, and workers are replaced after a number of resolutions to reclaim whatever the builds leaked.
+ */
+public class GradleResolverPool {
+
+    private static final Logger LOGGER = Logger.getLogger(GradleResolverPool.class.getName());
+
+    public static boolean ENABLED = !Boolean.getBoolean(GradleResolverPool.class.getName() + ".disabled");
+
+    public static int MAX_WORKERS = Integer.getInteger(GradleResolverPool.class.getName() + ".maxWorkers", 2);
+
+    public static int HEAP_MB = Integer.getInteger(GradleResolverPool.class.getName() + ".heapMb", 512);
+
+    public static int DAEMON_HEAP_MB = Integer.getInteger(GradleResolverPool.class.getName() + ".daemonHeapMb", 512);
+
+    public static int TIMEOUT_SECONDS = Integer.getInteger(GradleResolverPool.class.getName() + ".timeoutSeconds", 300);
+
+    public static int MAX_REQUESTS = Integer.getInteger(GradleResolverPool.class.getName() + ".maxRequests", 50);
+
+    private static final int CANCEL_SECONDS = 10;
+
+    private static final GradleResolverPool INSTANCE = new GradleResolverPool();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+    private final Semaphore permits = new Semaphore(Math.max(1, MAX_WORKERS), true);
+    private final Deque<Worker> idle = new ArrayDeque<Worker>();
+
+    public static GradleResolverPool get() {
+        return INSTANCE;
+    }
+
+    public GradleDependencyInfo resolve(final File buildFile) throws IOException, InterruptedException {
+        permits.acquire();
+
+        Worker worker = null;
+        boolean reusable = false;
+
+        try {
+            synchronized (idle) {
+                worker = idle.poll();
+            }
+            if (worker == null)
+                worker = new Worker();
+
+            final Worker w = worker;
+            Future<Object> answer = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return w.exchange(buildFile.getPath());
+                }
+            });
+
+            Object result;
+            try {
+                result = answer.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                cancel(worker, answer);
+                throw new IOException("Resolving " + buildFile + " took longer than " + TIMEOUT_SECONDS + " seconds");
+            } catch (InterruptedException e) {
+                cancel(worker, answer);
+                throw e;
+            } catch (ExecutionException e) {
+                throw (IOException) new IOException("Resolver worker failed on " + buildFile).initCause(e.getCause());
+            }
+
+            reusable = ++worker.requests < MAX_REQUESTS;
+
+            if (result instanceof GradleDependencyInfo)
+                return (GradleDependencyInfo) result;
+
+            throw new IOException("Could not resolve " + buildFile + ": " + result);
+        } finally {
+            if (worker != null) {
+                if (reusable) {
+                    synchronized (idle) {
+                        idle.push(worker);
+                    }
+                } else {
+                    worker.destroy();
+                }
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Cancels the resolution in the daemon and gives the worker a moment to pass that on before it is killed.
+     */
+    private static void cancel(Worker worker, Future<Object> answer) {
+        try {
+            worker.cancel();
+            answer.get(CANCEL_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Resolver worker did not acknowledge the cancellation", e);
+        }
+        answer.cancel(true);
+    }
+
+    private static String getClasspath() throws IOException {
+        Set<String> entries = new LinkedHashSet<String>();
+        for (Class<?> c : new Class<?>[] {GradleDependencyInfoWorker.class, GradleConnector.class, org.slf4j.LoggerFactory.class}) {
+            try {
+                entries.add(Which.jarFile(c).getPath());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Could not locate " + c + " for the resolver workers: " + e.getMessage());
+            }
+        }
+
+        StringBuilder classpath = new StringBuilder();
+        for (String entry : entries) {
+            if (classpath.length() > 0)
+                classpath.append(File.pathSeparatorChar);
+            classpath.append(entry);
+        }
+        return classpath.toString();
+    }
+
+    private static final class Worker {
+        private final Process process;
+        private final ObjectOutputStream out;
+        private ObjectInputStream in;
+        private int requests;
+
+        private Worker() throws IOException {
+            String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+            process = new ProcessBuilder(java, "-Xmx" + HEAP_MB + "m", "-cp", getClasspath(),
+                    GradleDependencyInfoWorker.class.getName(), "-Xmx" + DAEMON_HEAP_MB + "m").start();
+
+            drain(process.getErrorStream());
+
+            out = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            out.flush();
+        }
+
+        private Object exchange(String path) throws IOException, ClassNotFoundException {
+            out.writeObject(path);
+            out.flush();
+
+            if (in == null) // blocks until the worker wrote its stream header
+                in = new ObjectInputStream(new BufferedInputStream(process.getInputStream()));
+
+            return in.readObject();
+        }
+
+        private void cancel() throws IOException {
+            out.writeObject(null);
+            out.flush();
+        }
+
+        private void destroy() {
+            process.destroy();
+        }
+
+        private static void drain(final InputStream stream) {
+            Thread thread = new Thread("Gradle resolver worker output") {
+                @Override
+                public void run() {
+                    try {
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            LOGGER.log(Level.FINE, line);
+                        }
+                    } catch (IOException ignore) {
+                        // the worker is gone
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package hudson.plugins.gradle;
+
+import hudson.Util;
+import hudson.model.InvisibleAction;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Records the resources the Gradle builder chose for a build and how long Gradle ran with them. Exposed through the
+ * remote API, so the settings can be compared across builds and nodes.
+ */
+@ExportedBean
+public class GradleResourceAction extends InvisibleAction {
+
+    private final String nodeName;
+    private final int cores;
+    private final long memoryMb;
+    private final int busyExecutors;
+    private final int executors;
+    private final int maxWorkers;
+    private final int maxHeapMb;
+    private long gradleMillis = -1;
+
+    public GradleResourceAction(String nodeName, int cores, long memoryMb, int busyExecutors, int executors,
+                                int maxWorkers, int maxHeapMb) {
+        this.nodeName = nodeName;
+        this.cores = cores;
+        this.memoryMb = memoryMb;
+        this.busyExecutors = busyExecutors;
+        this.executors = executors;
+        this.maxWorkers = maxWorkers;
+        this.maxHeapMb = maxHeapMb;
+    }
+
+    @Exported
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    @Exported
+    public int getCores() {
+        return cores;
+    }
+
+    @Exported
+    public long getMemoryMb() {
+        return memoryMb;
+    }
+
+    @Exported
+    public int getBusyExecutors() {
+        return busyExecutors;
+    }
+
+    @Exported
+    public int getExecutors() {
+        return executors;
+    }
+
+    /**
+     * @return the chosen number of workers, or -1 if left to Gradle or the user
+     */
+    @Exported
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * @return the chosen heap in megabytes, or -1 if left to Gradle or the user
+     */
+    @Exported
+    public int getMaxHeapMb() {
+        return maxHeapMb;
+    }
+
+    /**
+     * @return how long Gradle ran, or -1 if it didn't finish
+     */
+    @Exported
+    public long getGradleMillis() {
+        return gradleMillis;
+    }
+
+    public String getGradleTimeString() {
+        return gradleMillis < 0 ? "-" : Util.getTimeSpanString(gradleMillis);
+    }
+
+    void setGradleMillis(long gradleMillis) {
+        this.gradleMillis = gradleMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "workers=" + (maxWorkers < 0 ? "default" : maxWorkers)
+                + ", heap=" + (maxHeapMb < 0 ? "default" : maxHeapMb + "m")
+                + " (" + cores + " cores, " + memoryMb + "m memory, " + busyExecutors + " of " + executors
+                + " executors busy on " + (nodeName.length() == 0 ? "master" : nodeName) + ")";
+    }
+}
@@ -0,0 +1,177 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Properties;
+
+/**
+ * Derives {@code --max-workers} and the heap of the Gradle JVM from the resources of the node, shared by its busy
+ * executors, so that concurrent Gradle builds on a node don't each assume they have the whole machine.
+ *
+ * A heap chosen by Jenkins is merged into the JVM arguments the build configures in {@code gradle.properties}, as
+ * {@code -Dorg.gradle.jvmargs} on the command line replaces that property as a whole.
+ */
+public class GradleResourceTuner {
+
+    /** share of the physical memory handed to Gradle JVMs, the rest is left for forked test JVMs and the OS */
+    public static int MEMORY_PERCENT = Integer.getInteger(GradleResourceTuner.class.getName() + ".memoryPercent", 50);
+    public static int MIN_HEAP_MB = Integer.getInteger(GradleResourceTuner.class.getName() + ".minHeapMb", 256);
+    public static int MAX_HEAP_MB = Integer.getInteger(GradleResourceTuner.class.getName() + ".maxHeapMb", 8192);
+
+    static int workersFor(int cores, int busyExecutors) {
+        return Math.max(1, cores / Math.max(1, busyExecutors));
+    }
+
+    /**
+     * @return the heap in megabytes, or -1 if the memory of the node is unknown
+     */
+    static int heapMbFor(long memoryMb, int busyExecutors) {
+        if (memoryMb <= 0)
+            return -1;
+
+        long heap = memoryMb * MEMORY_PERCENT / 100 / Math.max(1, busyExecutors);
+        return (int) Math.min(MAX_HEAP_MB, Math.max(MIN_HEAP_MB, heap));
+    }
+
+    /**
+     * Checks whether the user already configured one of the given options in the switches or tasks.
+     */
+    static boolean isConfigured(String arguments, String... options) {
+        for (String option : options) {
+            if (arguments.contains(option))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the build sets the property in its Gradle properties, with a value containing the given one
+     * if not null.
+     */
+    static boolean isConfigured(Properties gradleProperties, String property, String value) {
+        String configured = gradleProperties.getProperty(property);
+        return configured != null && (value == null || configured.contains(value));
+    }
+
+    /**
+     * Replaces the maximum heap in the JVM arguments configured by the build.
+     *
+     * @param jvmArgs the configured JVM arguments, or null
+     * @param heap    the heap option, e.g. {@code -Xmx1024m}
+     */
+    static String mergeHeap(String jvmArgs, String heap) {
+        StringBuilder merged = new StringBuilder();
+
+        if (jvmArgs != null) {
+            for (String arg : jvmArgs.trim().split("\\s+")) {
+                if (arg.length() > 0 && !arg.startsWith("-Xmx"))
+                    merged.append(arg).append(' ');
+            }
+        }
+
+        return merged.append(heap).toString();
+    }
+
+    /**
+     * Reads the Gradle properties a build in the given directory picks up from {@code gradle.properties}.
+     *
+     * @param userHome the Gradle user home, or null for the default one
+     */
+    public static Properties readGradleProperties(FilePath projectDir, String userHome)
+            throws IOException, InterruptedException {
+        return projectDir.act(new GradlePropertiesReader(userHome));
+    }
+
+    /**
+     * Computes the settings for a build about to start on the given computer.
+     *
+     * @param arguments        the switches and tasks of the build, options found there aren't overridden
+     * @param gradleProperties the Gradle properties of the build, a heap or number of workers set there isn't
+     *                         overridden either
+     * @param tuneHeap         whether the heap may be chosen
+     */
+    public static GradleResourceAction tune(Computer computer, VirtualChannel channel, String arguments,
+                                            Properties gradleProperties, boolean tuneHeap)
+            throws IOException, InterruptedException {
+        long[] resources = channel.call(new Probe());
+        int cores = (int) resources[0];
+        long memoryMb = resources[1];
+        // includes the executor running this build
+        int busy = computer.countBusy();
+
+        int workers = isConfigured(arguments, "--max-workers", "org.gradle.workers.max")
+                || isConfigured(gradleProperties, "org.gradle.workers.max", null)
+                ? -1 : workersFor(cores, busy);
+        int heapMb = !tuneHeap || isConfigured(arguments, "org.gradle.jvmargs")
+                || isConfigured(gradleProperties, "org.gradle.jvmargs", "-Xmx")
+                ? -1 : heapMbFor(memoryMb, busy);
+
+        return new GradleResourceAction(computer.getName(), cores, memoryMb, busy, computer.countExecutors(),
+                workers, heapMb);
+    }
+
+    /**
+     * Reads {@code gradle.properties} of the project directory and of the Gradle user home, the latter taking
+     * precedence as it does in Gradle.
+     */
+    static class GradlePropertiesReader implements FilePath.FileCallable<Properties> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String userHome;
+
+        GradlePropertiesReader(String userHome) {
+            this.userHome = userHome;
+        }
+
+        public Properties invoke(File projectDir, VirtualChannel channel) throws IOException {
+            File home = userHome != null ? new File(userHome) : new File(System.getProperty("user.home"), ".gradle");
+            Properties properties = new Properties();
+
+            load(new File(projectDir, "gradle.properties"), properties);
+            load(new File(home, "gradle.properties"), properties);
+
+            return properties;
+        }
+
+        private static void load(File file, Properties properties) throws IOException {
+            if (!file.isFile())
+                return;
+
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the number of cores and the physical memory in megabytes, or -1 if unknown, of the node.
+     */
+    static class Probe implements Callable<long[], IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        public long[] call() throws IOException {
+            long memoryMb = -1;
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                memoryMb = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() / (1024 * 1024);
+            }
+
+            return new long[]{Runtime.getRuntime().availableProcessors(), memoryMb};
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package hudson.plugins.gradle;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-node Gradle user homes: every executor of a node gets its own writable {@code GRADLE_USER_HOME}, and all of
+ * them share a read-only dependency cache ({@code GRADLE_RO_DEP_CACHE}) seeded from the successful builds.
+ *
+ * The layout below the node's root directory is:
+ * <pre>
+ * gradle-user-home/
+ *     shared/N/modules-2/  read-only dependency cache, seeded at time N
+ *     executor-N/          GRADLE_USER_HOME of executor N
+ *     common/              GRADLE_USER_HOME of all executors for Gradle before 6.2
+ * </pre>
+ * The shared cache is seeded again from a build that downloaded modules it lacks, at most every
+ * {@link #RESEED_MINUTES}. A new seed goes to a directory of its own, so builds still reading the previous one are
+ * not disturbed, and older seeds are deleted. Gradle only honours {@code GRADLE_RO_DEP_CACHE} since 6.2, so builds
+ * with an older or unknown version share one writable user home instead, whose caches Gradle locks across processes.
+ */
+public class GradleSharedUserHome {
+
+    public static final String ROOT = "gradle-user-home";
+    public static final String SHARED = "shared";
+    public static final String COMMON = "common";
+    public static final String MODULES = "modules-2";
+
+    private static final String FILES = "files-2.1";
+
+    private static final Pattern VERSION = Pattern.compile("gradle-(?:launcher-)?(\\d+)\\.(\\d+)");
+
+    public static int RESEED_MINUTES = Integer.getInteger(GradleSharedUserHome.class.getName() + ".reseedMinutes", 60);
+
+    private static final ConcurrentMap<String, Object> seedLocks = new ConcurrentHashMap<String, Object>();
+
+    private final String nodeName;
+    private final FilePath root;
+    private final FilePath executorHome;
+    private final FilePath sharedCache;
+    private boolean readOnlyCache;
+
+    private GradleSharedUserHome(String nodeName, FilePath root, FilePath executorHome) {
+        this.nodeName = nodeName;
+        this.root = root;
+        this.executorHome = executorHome;
+        this.sharedCache = root.child(SHARED);
+    }
+
+    /**
+     * Returns the user home of the executor running the current build, or null when not called from an executor.
+     */
+    public static GradleSharedUserHome forCurrentExecutor() {
+        Executor executor = Executor.currentExecutor();
+        Computer computer = Computer.currentComputer();
+        Node node = computer != null ? computer.getNode() : null;
+
+        if (executor == null || node == null || node.getRootPath() == null)
+            return null;
+
+        FilePath root = node.getRootPath().child(ROOT);
+        return new GradleSharedUserHome(node.getNodeName(), root, root.child("executor-" + executor.getNumber()));
+    }
+
+    /**
+     * @param gradleVersion the version of Gradle running the build, or null if it isn't known
+     */
+    public void setUp(EnvVars env, String gradleVersion) throws IOException, InterruptedException {
+        readOnlyCache = supportsReadOnlyCache(gradleVersion);
+
+        if (!readOnlyCache) {
+            FilePath common = root.child(COMMON);
+            common.mkdirs();
+            env.put("GRADLE_USER_HOME", common.getRemote());
+            return;
+        }
+
+        executorHome.mkdirs();
+        env.put("GRADLE_USER_HOME", executorHome.getRemote());
+
+        FilePath seed = getLatestSeed();
+        if (seed != null)
+            env.put("GRADLE_RO_DEP_CACHE", seed.getRemote());
+    }
+
+    /**
+     * Seeds the shared dependency cache from this executor's cache, unless it already holds all of its modules or
+     * was seeded recently.
+     */
+    public void seedIfNecessary(TaskListener listener) throws IOException, InterruptedException {
+        if (!readOnlyCache)
+            return; // the common user home is shared as is
+
+        synchronized (lockFor(nodeName)) {
+            FilePath source = executorHome.child("caches").child(MODULES);
+
+            if (!source.exists())
+                return;
+
+            FilePath latest = getLatestSeed();
+            if (latest != null) {
+                long age = System.currentTimeMillis() - Long.parseLong(latest.getName());
+                if (age < TimeUnit.MINUTES.toMillis(RESEED_MINUTES)
+                        || !source.act(new MissingModules(latest.child(MODULES).getRemote())))
+                    return;
+            }
+
+            new GradleLogger(listener).info("Seeding the shared Gradle dependency cache " + sharedCache);
+
+            String seed = String.valueOf(System.currentTimeMillis());
+            FilePath tmp = sharedCache.child(seed + ".tmp");
+            tmp.deleteRecursive();
+            tmp.child(MODULES).mkdirs();
+            // lock files and the cleanup state must not end up in a read-only cache
+            source.copyRecursiveTo("**/*", "**/*.lock,**/gc.properties", tmp.child(MODULES));
+            tmp.renameTo(sharedCache.child(seed));
+
+            // builds that started before may still read the previous seed
+            for (FilePath dir : sharedCache.listDirectories()) {
+                if (!dir.getName().equals(seed) && (latest == null || !dir.getName().equals(latest.getName())))
+                    dir.deleteRecursive();
+            }
+        }
+    }
+
+    /**
+     * @return the directory holding the most recent seed of the shared cache, or null if it wasn't seeded yet
+     */
+    private FilePath getLatestSeed() throws IOException, InterruptedException {
+        if (!sharedCache.isDirectory())
+            return null;
+
+        FilePath latest = null;
+        for (FilePath dir : sharedCache.listDirectories()) {
+            if (dir.getName().matches("\\d+") && dir.child(MODULES).isDirectory()
+                    && (latest == null || Long.parseLong(dir.getName()) > Long.parseLong(latest.getName())))
+                latest = dir;
+        }
+        return latest;
+    }
+
+    /**
+     * @param gradleHome the Gradle installation running the build, or null
+     * @param wrapper    the wrapper script running the build, or null
+     * @return the version of Gradle running the build, or null if it can't be told
+     */
+    public static String getGradleVersion(FilePath gradleHome, FilePath wrapper) throws IOException, InterruptedException {
+        if (wrapper != null) {
+            FilePath properties = wrapper.getParent().child("gradle").child("wrapper").child("gradle-wrapper.properties");
+            if (!properties.exists())
+                return null;
+
+            Properties wrapperProperties = new Properties();
+            InputStream in = properties.read();
+            try {
+                wrapperProperties.load(in);
+            } finally {
+                in.close();
+            }
+            return parseVersion(wrapperProperties.getProperty("distributionUrl"));
+        }
+
+        if (gradleHome != null && gradleHome.child("lib").isDirectory()) {
+            for (FilePath jar : gradleHome.child("lib").list("gradle-launcher-*.jar")) {
+                return parseVersion(jar.getName());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param name the distribution URL of a wrapper or the name of the launcher jar of a distribution
+     * @return the major and minor version of Gradle the name contains, or null
+     */
+    static String parseVersion(String name) {
+        Matcher m = VERSION.matcher(name != null ? name : "");
+        return m.find() ? m.group(1) + "." + m.group(2) : null;
+    }
+
+    static boolean supportsReadOnlyCache(String version) {
+        if (version == null)
+            return false;
+
+        String[] parts = version.split("\\.");
+        int major = Integer.parseInt(parts[0]);
+        int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        return major > 6 || major == 6 && minor >= 2;
+    }
+
+    private static Object lockFor(String nodeName) {
+        Object lock = new Object();
+        Object existing = seedLocks.putIfAbsent(nodeName, lock);
+        return existing != null ? existing : lock;
+    }
+
+    /**
+     * Tells whether an executor's dependency cache holds modules the shared cache lacks.
+     */
+    static final class MissingModules implements FilePath.FileCallable<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String sharedModules;
+
+        MissingModules(String sharedModules) {
+            this.sharedModules = sharedModules;
+        }
+
+        public Boolean invoke(File modules, VirtualChannel channel) {
+            File[] groups = new File(modules, FILES).listFiles();
+            if (groups == null)
+                return false;
+
+            File shared = new File(sharedModules, FILES);
+
+            for (File group : groups) {
+                String[] names = group.list();
+                if (names == null)
+                    continue;
+
+                for (String name : names) {
+                    if (!new File(new File(shared, group.getName()), name).isDirectory())
+                        return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Restricts the {@code Test} tasks of a build to one shard of the test classes, through an init script that
+ * excludes the scanned classes assigned to other shards by a {@link TestShardPlanner}. Gradle combines include
+ * specs with a logical or, so only an exclude spec narrows down the includes of the build itself.
+ */
+public class GradleTestShard {
+
+    public static final String DIR = ".gradle-test-shard";
+
+    private static final String INIT_SCRIPT =
+            "def assignment = new Properties()\n" +
+            "new File(@ASSIGNMENT@).withInputStream { assignment.load(it) }\n" +
+            "int index = assignment.remove('shard.index') as int\n" +
+            "int count = assignment.remove('shard.count') as int\n" +
+            "\n" +
+            "allprojects {\n" +
+            "    tasks.withType(Test) {\n" +
+            "        exclude { element ->\n" +
+            "            if (element.directory || !element.name.endsWith('.class'))\n" +
+            "                return false\n" +
+            "            String className = element.relativePath.pathString.replace('/', '.')\n" +
+            "            className = className.substring(0, className.length() - 6)\n" +
+            "            if (className.indexOf('$') > 0)\n" +
+            "                className = className.substring(0, className.indexOf('$'))\n" +
+            "            String assigned = assignment.getProperty(className)\n" +
+            "            int shard = assigned != null ? assigned as int : Math.abs(className.hashCode() % count)\n" +
+            "            shard != index\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+
+    private final int index;
+    private final int count;
+
+    public GradleTestShard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count)
+            throw new IllegalArgumentException("Invalid test shard " + index + " of " + count);
+
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the assignment and the init script to a directory in the workspace.
+     *
+     * @return the init script to pass with {@code --init-script}
+     */
+    public FilePath write(FilePath workspace, TestShardPlanner planner) throws IOException, InterruptedException {
+        FilePath dir = workspace.child(DIR);
+        dir.mkdirs();
+
+        Properties assignment = new Properties();
+        assignment.setProperty("shard.index", String.valueOf(index));
+        assignment.setProperty("shard.count", String.valueOf(count));
+
+        for (Map.Entry<String, Integer> entry : planner.getAssignment().entrySet()) {
+            assignment.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assignment.store(out, null);
+
+        FilePath assignmentFile = dir.child("assignment.properties");
+        assignmentFile.write(out.toString("ISO-8859-1"), "ISO-8859-1");
+
+        FilePath initScript = dir.child("shard.gradle");
+        initScript.write(INIT_SCRIPT.replace("@ASSIGNMENT@", quote(assignmentFile.getRemote())), "UTF-8");
+        return initScript;
+    }
+
+    private static String quote(String path) {
+        return "'" + path.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
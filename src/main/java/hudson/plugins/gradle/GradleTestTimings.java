@@ -0,0 +1,145 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+import hudson.model.AbstractProject;
+import hudson.remoting.VirtualChannel;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Durations of test classes harvested from the JUnit XML reports Gradle writes, kept per job in
+ * {@code gradle-test-timings.properties} as class name to milliseconds.
+ *
+ * Matrix configurations share the file of their parent, so that shards running as separate configurations learn
+ * from each other for the next build. Within a build all shards plan with the same snapshot, see
+ * {@link GradleTestTimingsAction}.
+ */
+public class GradleTestTimings {
+
+    public static final String FILE = "gradle-test-timings.properties";
+    public static final String REPORTS = "**/build/test-results/**/TEST-*.xml";
+
+    private static final Logger LOGGER = Logger.getLogger(GradleTestTimings.class.getName());
+
+    private static File getFile(AbstractProject<?, ?> project) {
+        return new File(project.getRootProject().getRootDir(), FILE);
+    }
+
+    public static Map<String, Long> load(AbstractProject<?, ?> project) {
+        File file = getFile(project);
+        Map<String, Long> durations = new HashMap<String, Long>();
+
+        synchronized (GradleTestTimings.class) {
+            if (!file.exists())
+                return durations;
+
+            Properties properties = new Properties();
+
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not load " + file, e);
+                return durations;
+            }
+
+            for (String className : properties.stringPropertyNames()) {
+                try {
+                    durations.put(className, Long.parseLong(properties.getProperty(className)));
+                } catch (NumberFormatException e) {
+                    // ignore damaged entries, they are rewritten by the next build
+                }
+            }
+        }
+
+        return durations;
+    }
+
+    /**
+     * Merges the durations measured by a build into the stored ones, replacing older measurements of the same class.
+     */
+    public static void merge(AbstractProject<?, ?> project, Map<String, Long> measured) throws IOException {
+        if (measured.isEmpty())
+            return;
+
+        File file = getFile(project);
+
+        synchronized (GradleTestTimings.class) {
+            Map<String, Long> durations = load(project);
+            durations.putAll(measured);
+
+            Properties properties = new Properties();
+            for (Map.Entry<String, Long> entry : durations.entrySet()) {
+                properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+
+            File tmp = new File(file.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                properties.store(out, "Gradle test class durations in milliseconds");
+            } finally {
+                out.close();
+            }
+
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file))
+                    throw new IOException("Could not replace " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads the durations of all test suites reported below a directory, on the machine holding it. Reports left
+     * by earlier builds are read as well, they still hold valid measurements.
+     */
+    public static class Collector implements FilePath.FileCallable<Map<String, Long>> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Map<String, Long> invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+            Map<String, Long> durations = new HashMap<String, Long>();
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+
+            for (FilePath report : new FilePath(dir).list(REPORTS)) {
+                InputStream in = new FileInputStream(new File(report.getRemote()));
+                try {
+                    XMLStreamReader reader = factory.createXMLStreamReader(in);
+
+                    while (reader.hasNext()) {
+                        if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                            if ("testsuite".equals(reader.getLocalName())) {
+                                String name = reader.getAttributeValue(null, "name");
+                                String time = reader.getAttributeValue(null, "time");
+
+                                if (name != null && time != null)
+                                    durations.put(name, Math.round(Double.parseDouble(time) * 1000));
+                            }
+                            break;
+                        }
+                    }
+
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // a report being written or otherwise broken, it doesn't matter for planning
+                } catch (NumberFormatException e) {
+                    // ditto
+                } finally {
+                    in.close();
+                }
+            }
+
+            return durations;
+        }
+    }
+}
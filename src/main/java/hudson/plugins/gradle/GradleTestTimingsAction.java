@@ -0,0 +1,44 @@
+package hudson.plugins.gradle;
+
+import hudson.matrix.MatrixRun;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+
+import java.util.*;
+
+/**
+ * The test class durations a build plans its test shards with, taken when the first shard starts.
+ *
+ * For matrix builds the snapshot is attached to the parent build and shared by all configurations, so every shard
+ * computes the same assignment even when other shards have already merged their timings.
+ */
+public class GradleTestTimingsAction extends InvisibleAction {
+
+    private final Map<String, Long> durations;
+
+    public GradleTestTimingsAction(Map<String, Long> durations) {
+        this.durations = new HashMap<String, Long>(durations);
+    }
+
+    public Map<String, Long> getDurations() {
+        return Collections.unmodifiableMap(durations);
+    }
+
+    /**
+     * @return the durations to plan the shards of the build with, snapshotting the stored ones on first use
+     */
+    public static Map<String, Long> getDurations(AbstractBuild<?, ?> build) {
+        AbstractBuild<?, ?> owner = build instanceof MatrixRun ? ((MatrixRun) build).getParentBuild() : build;
+
+        synchronized (GradleTestTimingsAction.class) {
+            GradleTestTimingsAction action = owner.getAction(GradleTestTimingsAction.class);
+
+            if (action == null) {
+                action = new GradleTestTimingsAction(GradleTestTimings.load(build.getProject()));
+                owner.addAction(action);
+            }
+
+            return action.getDurations();
+        }
+    }
+}
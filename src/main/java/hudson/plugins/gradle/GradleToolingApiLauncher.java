@@ -0,0 +1,223 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+import hudson.model.BuildListener;
+import hudson.remoting.VirtualChannel;
+import org.gradle.tooling.*;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.task.*;
+import org.gradle.tooling.events.test.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs Gradle tasks through the Tooling API {@link BuildLauncher} on the node owning the project directory.
+ *
+ * Task and test progress is reported from typed progress events instead of parsing the console output, and
+ * aborting the build cancels it through a cancellation token rather than killing the process.
+ * Typed progress events require Gradle 2.5 or later on the project side.
+ */
+public class GradleToolingApiLauncher implements FilePath.FileCallable<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int SLOWEST_TASKS = 10;
+
+    private final BuildListener listener;
+    private final String gradleHome;
+    private final String gradleUserHome;
+    private final String javaHome;
+    private final List<String> jvmArguments;
+    private final List<String> arguments;
+    private final List<String> tasks;
+
+    /**
+     * @param gradleHome the Gradle installation to use, or null to use the distribution defined by the build
+     * @param gradleUserHome the Gradle user home directory, or null for the default
+     * @param javaHome the JDK to run the daemon on, or null for the JVM running the Tooling API
+     */
+    public GradleToolingApiLauncher(BuildListener listener, String gradleHome, String gradleUserHome, String javaHome,
+                                    List<String> jvmArguments, List<String> arguments, List<String> tasks) {
+        this.listener = listener;
+        this.gradleHome = gradleHome;
+        this.gradleUserHome = gradleUserHome;
+        this.javaHome = javaHome;
+        this.jvmArguments = jvmArguments;
+        this.arguments = arguments;
+        this.tasks = tasks;
+    }
+
+    public Boolean invoke(File projectDir, VirtualChannel channel) throws IOException, InterruptedException {
+        GradleConnector connector = GradleConnector.newConnector().forProjectDirectory(projectDir);
+
+        if (gradleHome != null)
+            connector.useInstallation(new File(gradleHome));
+        else
+            connector.useBuildDistribution();
+
+        if (gradleUserHome != null)
+            connector.useGradleUserHomeDir(new File(gradleUserHome));
+
+        CancellationTokenSource cancellation = GradleConnector.newCancellationTokenSource();
+        ProjectConnection connection = connector.connect();
+
+        try {
+            final PrintStream logger = listener.getLogger();
+            ProgressReporter reporter = new ProgressReporter(logger);
+
+            BuildLauncher launcher = connection.newBuild()
+                    .forTasks(tasks.toArray(new String[tasks.size()]))
+                    .withArguments(arguments.toArray(new String[arguments.size()]))
+                    .setStandardOutput(logger)
+                    .setStandardError(logger)
+                    .withCancellationToken(cancellation.token());
+
+            if (javaHome != null)
+                launcher.setJavaHome(new File(javaHome));
+
+            if (!jvmArguments.isEmpty())
+                launcher.setJvmArguments(jvmArguments.toArray(new String[jvmArguments.size()]));
+
+            launcher.addProgressListener(reporter, EnumSet.of(OperationType.TASK, OperationType.TEST));
+
+            BuildResultHandler result = new BuildResultHandler();
+            launcher.run(result);
+
+            try {
+                result.await();
+            } catch (InterruptedException e) {
+                new GradleLogger(listener).info("Cancelling build.");
+                cancellation.cancel();
+                result.await();
+                throw e;
+            }
+
+            reporter.printSummary();
+
+            if (result.failure != null) {
+                new GradleLogger(listener).error(result.failure.getMessage());
+                return false;
+            }
+
+            return true;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static class BuildResultHandler implements ResultHandler<Void> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile GradleConnectionException failure;
+
+        public void onComplete(Void result) {
+            done.countDown();
+        }
+
+        public void onFailure(GradleConnectionException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+    }
+
+    private class ProgressReporter implements org.gradle.tooling.events.ProgressListener {
+        private final PrintStream logger;
+        private final List<TaskTiming> timings = new ArrayList<TaskTiming>();
+        private int upToDate;
+        private int skipped;
+        private int testsRun;
+        private int testsFailed;
+        private int testsSkipped;
+
+        ProgressReporter(PrintStream logger) {
+            this.logger = logger;
+        }
+
+        public synchronized void statusChanged(ProgressEvent event) {
+            if (event instanceof TaskFinishEvent)
+                taskFinished((TaskFinishEvent) event);
+            else if (event instanceof TestFinishEvent)
+                testFinished((TestFinishEvent) event);
+        }
+
+        private void taskFinished(TaskFinishEvent event) {
+            TaskOperationResult result = event.getResult();
+            String path = event.getDescriptor().getTaskPath();
+            long duration = result.getEndTime() - result.getStartTime();
+            String outcome = "";
+
+            if (result instanceof TaskSkippedResult) {
+                outcome = " SKIPPED";
+                skipped++;
+            } else if (result instanceof TaskSuccessResult && ((TaskSuccessResult) result).isUpToDate()) {
+                outcome = " UP-TO-DATE";
+                upToDate++;
+            } else if (result instanceof TaskFailureResult) {
+                outcome = " FAILED";
+            }
+
+            timings.add(new TaskTiming(path, duration));
+
+            try {
+                listener.annotate(new GradleTaskNote());
+            } catch (IOException ignore) {
+            }
+            logger.println(path + outcome + " (" + duration + " ms)");
+        }
+
+        private void testFinished(TestFinishEvent event) {
+            if (!(event.getDescriptor() instanceof JvmTestOperationDescriptor))
+                return;
+
+            JvmTestOperationDescriptor test = (JvmTestOperationDescriptor) event.getDescriptor();
+            if (test.getMethodName() == null)
+                return; // suite or class
+
+            testsRun++;
+
+            if (event.getResult() instanceof TestFailureResult) {
+                testsFailed++;
+                logger.println(test.getClassName() + " > " + test.getMethodName() + " FAILED");
+            } else if (event.getResult() instanceof TestSkippedResult) {
+                testsSkipped++;
+            }
+        }
+
+        synchronized void printSummary() {
+            GradleLogger gradleLogger = new GradleLogger(listener);
+            gradleLogger.info(timings.size() + " tasks finished, " + upToDate + " up-to-date, " + skipped + " skipped.");
+
+            if (testsRun > 0)
+                gradleLogger.info(testsRun + " tests completed, " + testsFailed + " failed, " + testsSkipped + " skipped.");
+
+            Collections.sort(timings);
+
+            for (TaskTiming timing : timings.subList(0, Math.min(SLOWEST_TASKS, timings.size()))) {
+                gradleLogger.info("  " + timing.path + " took " + timing.duration + " ms");
+            }
+        }
+    }
+
+    private static class TaskTiming implements Comparable<TaskTiming> {
+        private final String path;
+        private final long duration;
+
+        TaskTiming(String path, long duration) {
+            this.path = path;
+            this.duration = duration;
+        }
+
+        // slowest first
+        public int compareTo(TaskTiming o) {
+            return duration < o.duration ? 1 : (duration == o.duration ? 0 : -1);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package hudson.plugins.gradle;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.plugins.gradle.model.Dependency;
+import hudson.remoting.VirtualChannel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Hashes the content of the main archives of a Gradle project's publications in its {@code build/libs} directory,
+ * entry by entry, so that archives rebuilt from the same sources hash the same even though their entry timestamps
+ * differ.
+ *
+ * The main archive of a publication is the one named after its name and version. If there is none, every archive
+ * but those with a documentation or test classifier is hashed. Classes are hashed without their line numbers and
+ * source file names, so a change to comments or formatting alone doesn't change the hash.
+ *
+ * Returns null if there are no archives.
+ */
+public class JarContentHasher implements FilePath.FileCallable<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String LIBS_DIR = "build/libs";
+
+    private static final List<String> IGNORED_CLASSIFIERS = Arrays.asList("-sources", "-javadoc", "-groovydoc",
+            "-tests", "-test-fixtures");
+
+    private static final Set<String> DEBUG_ATTRIBUTES = new HashSet<String>(Arrays.asList("LineNumberTable", "SourceFile"));
+
+    private final Set<String> mainArchives = new HashSet<String>();
+
+    public JarContentHasher(Collection<Dependency> publications) {
+        for (Dependency publication : publications) {
+            mainArchives.add(publication.getName() + (publication.getVersion() != null ? "-" + publication.getVersion() : ""));
+        }
+    }
+
+    public String invoke(File projectDir, VirtualChannel channel) throws IOException, InterruptedException {
+        List<File> archives = selectArchives(new File(projectDir, LIBS_DIR).listFiles());
+
+        if (archives.isEmpty())
+            return null;
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        for (File archive : archives) {
+            digest.update(archive.getName().getBytes("UTF-8"));
+
+            ZipFile zip = new ZipFile(archive);
+            try {
+                List<ZipEntry> entries = new ArrayList<ZipEntry>(Collections.list(zip.entries()));
+                Collections.sort(entries, new Comparator<ZipEntry>() {
+                    public int compare(ZipEntry o1, ZipEntry o2) {
+                        return o1.getName().compareTo(o2.getName());
+                    }
+                });
+
+                for (ZipEntry entry : entries) {
+                    if (entry.isDirectory())
+                        continue;
+
+                    digest.update(entry.getName().getBytes("UTF-8"));
+
+                    byte[] content = read(zip.getInputStream(entry));
+                    digest.update(entry.getName().endsWith(".class") ? stripDebugInfo(content) : content);
+                }
+            } finally {
+                zip.close();
+            }
+        }
+
+        return Util.toHexString(digest.digest());
+    }
+
+    private List<File> selectArchives(File[] files) {
+        List<File> main = new ArrayList<File>();
+        List<File> other = new ArrayList<File>();
+
+        if (files == null)
+            return main;
+
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (!file.isFile())
+                continue;
+
+            String name = file.getName();
+            int extension = name.lastIndexOf('.');
+            String baseName = extension > 0 ? name.substring(0, extension) : name;
+
+            if (mainArchives.contains(baseName))
+                main.add(file);
+            else if (!hasIgnoredClassifier(baseName))
+                other.add(file);
+        }
+
+        return main.isEmpty() ? other : main;
+    }
+
+    private static boolean hasIgnoredClassifier(String baseName) {
+        for (String classifier : IGNORED_CLASSIFIERS) {
+            if (baseName.endsWith(classifier))
+                return true;
+        }
+        return false;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the class file without its line number tables and source file name, or as is if it can't be parsed
+     */
+    static byte[] stripDebugInfo(byte[] classFile) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(classFile);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(classFile.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            copy(in, out, 8); // magic and version
+
+            int constants = u2(in);
+            out.writeShort(constants);
+            String[] utf8 = new String[constants];
+
+            for (int i = 1; i < constants; i++) {
+                byte tag = in.get();
+                out.writeByte(tag);
+
+                switch (tag) {
+                    case 1:
+                        byte[] value = new byte[u2(in)];
+                        in.get(value);
+                        utf8[i] = new String(value, "UTF-8");
+                        out.writeShort(value.length);
+                        out.write(value);
+                        break;
+                    case 7: case 8: case 16: case 19: case 20:
+                        copy(in, out, 2);
+                        break;
+                    case 15:
+                        copy(in, out, 3);
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        copy(in, out, 4);
+                        break;
+                    case 5: case 6:
+                        copy(in, out, 8);
+                        i++; // takes two entries
+                        break;
+                    default:
+                        return classFile;
+                }
+            }
+
+            copy(in, out, 6); // access flags, this and super class
+            int interfaces = u2(in);
+            out.writeShort(interfaces);
+            copy(in, out, 2 * interfaces);
+
+            for (int kind = 0; kind < 2; kind++) { // fields, then methods
+                int members = u2(in);
+                out.writeShort(members);
+
+                for (int i = 0; i < members; i++) {
+                    copy(in, out, 6); // access flags, name and descriptor
+                    copyAttributes(in, out, utf8);
+                }
+            }
+
+            copyAttributes(in, out, utf8);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            return classFile;
+        } catch (RuntimeException e) {
+            return classFile; // truncated or otherwise malformed
+        }
+    }
+
+    private static void copyAttributes(ByteBuffer in, DataOutputStream out, String[] utf8) throws IOException {
+        int count = u2(in);
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        DataOutputStream attributes = new DataOutputStream(kept);
+        int keptCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            int nameIndex = u2(in);
+            int length = in.getInt();
+
+            ByteBuffer body = in.slice();
+            body.limit(length);
+            in.position(in.position() + length);
+
+            String name = nameIndex < utf8.length ? utf8[nameIndex] : null;
+            if (DEBUG_ATTRIBUTES.contains(name))
+                continue;
+
+            ByteArrayOutputStream content = new ByteArrayOutputStream(length);
+            DataOutputStream contentOut = new DataOutputStream(content);
+
+            if ("Code".equals(name)) {
+                copy(body, contentOut, 4); // max stack and locals
+                int codeLength = body.getInt();
+                contentOut.writeInt(codeLength);
+                copy(body, contentOut, codeLength);
+                int exceptions = u2(body);
+                contentOut.writeShort(exceptions);
+                copy(body, contentOut, 8 * exceptions);
+                copyAttributes(body, contentOut, utf8);
+            } else {
+                copy(body, contentOut, length);
+            }
+
+            attributes.writeShort(nameIndex);
+            attributes.writeInt(content.size());
+            content.writeTo(attributes);
+            keptCount++;
+        }
+
+        out.writeShort(keptCount);
+        kept.writeTo(out);
+    }
+
+    private static int u2(ByteBuffer in) {
+        return in.getShort() & 0xffff;
+    }
+
+    private static void copy(ByteBuffer in, DataOutputStream out, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        out.write(bytes);
+    }
+}
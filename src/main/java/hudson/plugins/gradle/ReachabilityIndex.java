@@ -0,0 +1,363 @@
+package hudson.plugins.gradle;
+
+import java.util.*;
+
+/**
+ * Reachability over an immutable dependency graph, with nodes numbered once and node sets kept as bit sets.
+ *
+ * Transitive upstream sets are computed on first use and reused, so after warming up membership and intersection
+ * checks are plain bit operations instead of graph traversals. Cycles are condensed into strongly connected
+ * components, whose members share a single transitive upstream set.
+ */
+public class ReachabilityIndex<T> {
+
+    public static interface Edges<T> {
+        Collection<? extends T> getUpstream(T node);
+    }
+
+    public static interface Weights<T> {
+        long getWeight(T node);
+    }
+
+    private final List<T> nodes;
+    private final Map<T, Integer> numbers = new HashMap<T, Integer>();
+    private final BitSet[] upstream;
+    private final BitSet[] downstream;
+    private final BitSet[] transitiveUpstream;
+
+    // component number of each node, components numbered upstream first
+    private int[] component;
+    private List<BitSet> components;
+
+    public ReachabilityIndex(Collection<? extends T> nodes, Edges<T> edges) {
+        this.nodes = new ArrayList<T>(nodes);
+
+        for (int i = 0; i < this.nodes.size(); i++) {
+            numbers.put(this.nodes.get(i), i);
+        }
+
+        int size = this.nodes.size();
+        upstream = new BitSet[size];
+        downstream = new BitSet[size];
+        transitiveUpstream = new BitSet[size];
+
+        for (int i = 0; i < size; i++) {
+            upstream[i] = new BitSet(size);
+            downstream[i] = new BitSet(size);
+        }
+
+        for (int i = 0; i < size; i++) {
+            for (T up : edges.getUpstream(this.nodes.get(i))) {
+                Integer u = numbers.get(up);
+
+                if (u == null)
+                    continue; // not part of the graph
+
+                upstream[i].set(u);
+                downstream[u].set(i);
+            }
+        }
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public List<T> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @return the number of the node or -1 if it isn't part of the graph
+     */
+    public int indexOf(T node) {
+        Integer number = numbers.get(node);
+        return number == null ? -1 : number;
+    }
+
+    public T get(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * Returns all nodes reachable by following upstream edges, which includes the node itself only if it is
+     * part of a cycle.
+     */
+    public List<T> getTransitiveUpstream(T node) {
+        int n = indexOf(node);
+
+        if (n < 0)
+            return Collections.emptyList();
+
+        return toList(transitiveUpstream(n));
+    }
+
+    public boolean isTransitiveUpstream(T candidate, T node) {
+        int c = indexOf(candidate);
+        int n = indexOf(node);
+
+        return c >= 0 && n >= 0 && transitiveUpstream(n).get(c);
+    }
+
+    /**
+     * Checks whether one of the direct downstream nodes of {@code upstream}, other than {@code upstream} and
+     * {@code downstream} themselves, is also a transitive upstream node of {@code downstream}, i.e. whether
+     * {@code downstream} will be reached again through another path.
+     */
+    public boolean hasIntermediate(T upstream, T downstream) {
+        int u = indexOf(upstream);
+        int d = indexOf(downstream);
+
+        if (u < 0 || d < 0)
+            return false;
+
+        BitSet candidates = (BitSet) this.downstream[u].clone();
+        candidates.clear(u);
+        candidates.clear(d);
+
+        return candidates.intersects(transitiveUpstream(d));
+    }
+
+    /**
+     * Returns the weight of the heaviest chain starting at the node and following downstream edges, including the
+     * weight of the node itself. Edges closing a cycle are ignored.
+     */
+    public long getLongestDownstreamPath(T node, Weights<T> weights) {
+        int n = indexOf(node);
+
+        if (n < 0)
+            return 0;
+
+        return longestDownstreamPath(n, weights, new HashMap<Integer, Long>(), new BitSet(nodes.size()));
+    }
+
+    private long longestDownstreamPath(int n, Weights<T> weights, Map<Integer, Long> memo, BitSet onPath) {
+        Long known = memo.get(n);
+        if (known != null)
+            return known;
+
+        onPath.set(n);
+        long longest = 0;
+
+        for (int d = downstream[n].nextSetBit(0); d >= 0; d = downstream[n].nextSetBit(d + 1)) {
+            if (!onPath.get(d))
+                longest = Math.max(longest, longestDownstreamPath(d, weights, memo, onPath));
+        }
+
+        onPath.clear(n);
+
+        long result = Math.max(0, weights.getWeight(nodes.get(n))) + longest;
+        memo.put(n, result);
+        return result;
+    }
+
+    /**
+     * Returns the numbers of all nodes reachable by following downstream edges.
+     */
+    BitSet transitiveDownstream(int n) {
+        BitSet result = new BitSet(nodes.size());
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(n);
+
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+
+            for (int d = downstream[u].nextSetBit(0); d >= 0; d = downstream[u].nextSetBit(d + 1)) {
+                if (!result.get(d)) {
+                    result.set(d);
+                    queue.add(d);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    BitSet directUpstream(int n) {
+        return upstream[n];
+    }
+
+    BitSet directDownstream(int n) {
+        return downstream[n];
+    }
+
+    synchronized BitSet transitiveUpstream(int n) {
+        if (transitiveUpstream[n] != null)
+            return transitiveUpstream[n];
+
+        BitSet result = new BitSet(nodes.size());
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+
+        for (int u = upstream[n].nextSetBit(0); u >= 0; u = upstream[n].nextSetBit(u + 1)) {
+            queue.add(u);
+        }
+
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+
+            if (result.get(u))
+                continue;
+
+            result.set(u);
+
+            if (transitiveUpstream[u] != null) {
+                // already complete, no need to walk it again
+                result.or(transitiveUpstream[u]);
+                continue;
+            }
+
+            for (int v = upstream[u].nextSetBit(0); v >= 0; v = upstream[u].nextSetBit(v + 1)) {
+                if (!result.get(v))
+                    queue.add(v);
+            }
+        }
+
+        // every node of a cycle reaches the same nodes
+        components();
+        BitSet members = components.get(component[n]);
+        for (int m = members.nextSetBit(0); m >= 0; m = members.nextSetBit(m + 1)) {
+            transitiveUpstream[m] = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the strongly connected components of the graph in topological order, upstream components first,
+     * with the nodes of each component in the order they were given.
+     */
+    public List<List<T>> getComponents() {
+        List<List<T>> result = new ArrayList<List<T>>();
+
+        for (BitSet members : components()) {
+            result.add(toList(members));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the components that contain a cycle, that is more than one node or a node depending on itself.
+     */
+    public List<List<T>> getCycles() {
+        List<List<T>> result = new ArrayList<List<T>>();
+
+        for (BitSet members : components()) {
+            int first = members.nextSetBit(0);
+
+            if (members.cardinality() > 1 || upstream[first].get(first))
+                result.add(toList(members));
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether both nodes are part of the same cycle.
+     */
+    public boolean isSameComponent(T a, T b) {
+        int x = indexOf(a);
+        int y = indexOf(b);
+
+        if (x < 0 || y < 0)
+            return false;
+
+        components();
+        return component[x] == component[y];
+    }
+
+    /**
+     * Finds the strongly connected components with Tarjan's algorithm, using explicit stacks so deep graphs don't
+     * overflow the call stack.
+     */
+    private synchronized List<BitSet> components() {
+        if (components != null)
+            return components;
+
+        int size = nodes.size();
+        int[] index = new int[size];
+        int[] low = new int[size];
+        int[] next = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] stack = new int[size];
+        int[] calls = new int[size];
+        int sp = 0;
+        int counter = 0;
+        List<BitSet> found = new ArrayList<BitSet>();
+
+        Arrays.fill(index, -1);
+
+        for (int root = 0; root < size; root++) {
+            if (index[root] >= 0)
+                continue;
+
+            int cp = 0;
+            calls[cp++] = root;
+            index[root] = low[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            next[root] = downstream[root].nextSetBit(0);
+
+            while (cp > 0) {
+                int v = calls[cp - 1];
+                int w = next[v];
+
+                if (w >= 0) {
+                    next[v] = downstream[v].nextSetBit(w + 1);
+
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        next[w] = downstream[w].nextSetBit(0);
+                        calls[cp++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    cp--;
+
+                    if (cp > 0) {
+                        int parent = calls[cp - 1];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+
+                    if (low[v] == index[v]) {
+                        BitSet members = new BitSet(size);
+                        int x;
+                        do {
+                            x = stack[--sp];
+                            onStack[x] = false;
+                            members.set(x);
+                        } while (x != v);
+                        found.add(members);
+                    }
+                }
+            }
+        }
+
+        // components are completed downstream first
+        Collections.reverse(found);
+
+        component = new int[size];
+        for (int c = 0; c < found.size(); c++) {
+            BitSet members = found.get(c);
+            for (int m = members.nextSetBit(0); m >= 0; m = members.nextSetBit(m + 1)) {
+                component[m] = c;
+            }
+        }
+
+        components = found;
+        return components;
+    }
+
+    List<T> toList(BitSet bits) {
+        List<T> result = new ArrayList<T>(bits.cardinality());
+
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result.add(nodes.get(i));
+        }
+
+        return result;
+    }
+}
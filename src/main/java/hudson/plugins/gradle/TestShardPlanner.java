@@ -0,0 +1,83 @@
+package hudson.plugins.gradle;
+
+import java.util.*;
+
+/**
+ * Splits test classes into shards of about the same duration.
+ *
+ * Classes with a known duration are bin-packed longest first, each onto the shard with the least total duration so
+ * far. Classes without history are spread by the hash of their name, see {@link #shardOf(String, int)}, which the
+ * test filter of every shard evaluates the same way.
+ */
+public class TestShardPlanner {
+
+    private final int shards;
+    private final Map<String, Integer> assignment = new HashMap<String, Integer>();
+    private final long[] loads;
+
+    public TestShardPlanner(Map<String, Long> durations, int shards) {
+        if (shards < 1)
+            throw new IllegalArgumentException("At least one shard is required: " + shards);
+
+        this.shards = shards;
+        this.loads = new long[shards];
+
+        List<Map.Entry<String, Long>> classes = new ArrayList<Map.Entry<String, Long>>(durations.entrySet());
+        Collections.sort(classes, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                int c = b.getValue().compareTo(a.getValue());
+                return c != 0 ? c : a.getKey().compareTo(b.getKey());
+            }
+        });
+
+        for (Map.Entry<String, Long> entry : classes) {
+            int lightest = 0;
+
+            for (int i = 1; i < shards; i++) {
+                if (loads[i] < loads[lightest])
+                    lightest = i;
+            }
+
+            assignment.put(entry.getKey(), lightest);
+            loads[lightest] += Math.max(0, entry.getValue());
+        }
+    }
+
+    /**
+     * @return the shard of a class without a known duration
+     */
+    public static int shardOf(String className, int shards) {
+        return Math.abs(className.hashCode() % shards);
+    }
+
+    public int getShard(String className) {
+        Integer shard = assignment.get(className);
+        return shard != null ? shard : shardOf(className, shards);
+    }
+
+    /**
+     * @return the classes with a known duration assigned to the shard, sorted by name
+     */
+    public List<String> getClasses(int shard) {
+        List<String> classes = new ArrayList<String>();
+
+        for (Map.Entry<String, Integer> entry : assignment.entrySet()) {
+            if (entry.getValue() == shard)
+                classes.add(entry.getKey());
+        }
+
+        Collections.sort(classes);
+        return classes;
+    }
+
+    /**
+     * @return the total known duration of the shard in milliseconds
+     */
+    public long getLoad(int shard) {
+        return loads[shard];
+    }
+
+    public Map<String, Integer> getAssignment() {
+        return Collections.unmodifiableMap(assignment);
+    }
+}
@@ -0,0 +1,378 @@
+package hudson.plugins.gradle;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules downstream builds in topological waves.
+ *
+ * When a node finishes a build that isn't part of a running plan, the whole affected subgraph is computed from the
+ * {@link ReachabilityIndex} and every affected node waits for all of its affected upstream nodes. A node is
+ * released exactly once, as soon as the last of them has finished successfully, so nodes of the same wave build in
+ * parallel and diamonds don't cause redundant builds. Nodes downstream of a failed build are not released.
+ *
+ * Every completed build is reported through {@link #completed}, as nodes without downstream nodes never reach
+ * {@link #decide}, and a plan ends once all of its nodes have finished, been skipped or been dropped.
+ */
+public class WaveScheduler<T> {
+
+    public enum Decision {
+        /** all affected upstream nodes have finished, build now */
+        TRIGGER,
+        /** part of the plan, but not ready yet or already triggered */
+        HOLD,
+        /** not covered by any plan, decide the usual way */
+        UNPLANNED
+    }
+
+    public static long TIMEOUT = TimeUnit.HOURS.toMillis(12);
+
+    private final List<Plan<T>> plans = new ArrayList<Plan<T>>();
+
+    /**
+     * Records that {@code upstream} finished build {@code buildNumber} and decides whether {@code downstream}
+     * should be triggered by it. May be called several times for the same build, once per downstream node.
+     */
+    public synchronized Decision decide(ReachabilityIndex<T> index, T upstream, int buildNumber, boolean success,
+                                        T downstream) {
+        long now = System.currentTimeMillis();
+        expire(now);
+
+        Plan<T> plan = null;
+
+        for (Plan<T> candidate : plans) {
+            if (candidate.isContinuation(upstream, buildNumber)) {
+                plan = candidate;
+                break;
+            }
+        }
+
+        if (plan != null) {
+            plan.finished(upstream, buildNumber, success);
+        } else if (success) {
+            // a rebuild of a root supersedes its previous plan
+            for (Iterator<Plan<T>> it = plans.iterator(); it.hasNext(); ) {
+                if (it.next().root.equals(upstream))
+                    it.remove();
+            }
+
+            plan = Plan.create(index, upstream, buildNumber, now);
+
+            if (plan == null)
+                return Decision.UNPLANNED;
+
+            plans.add(plan);
+        } else {
+            return Decision.UNPLANNED;
+        }
+
+        Decision decision = plan.release(downstream);
+
+        if (plan.isDone())
+            plans.remove(plan);
+
+        return decision;
+    }
+
+    /**
+     * Records that a build finished, whether or not it triggers anything.
+     */
+    public synchronized void completed(T node, int buildNumber, boolean success) {
+        for (Iterator<Plan<T>> it = plans.iterator(); it.hasNext(); ) {
+            Plan<T> plan = it.next();
+
+            if (plan.isContinuation(node, buildNumber))
+                plan.finished(node, buildNumber, success);
+
+            if (plan.isDone())
+                it.remove();
+        }
+    }
+
+    /**
+     * Records that a released node won't be built because nothing it uses changed. Its downstream nodes stop
+     * waiting for it, but aren't released on its behalf: those left with no upstream node that was built are
+     * skipped as well.
+     *
+     * @return the nodes released because they only waited for the skipped ones, to be triggered by the caller
+     */
+    public synchronized List<T> skipped(T node) {
+        List<T> ready = new ArrayList<T>();
+
+        for (Iterator<Plan<T>> it = plans.iterator(); it.hasNext(); ) {
+            Plan<T> plan = it.next();
+            plan.skipped(node, ready);
+
+            if (plan.isDone())
+                it.remove();
+        }
+
+        return ready;
+    }
+
+    /**
+     * Records that a released node won't be built after all, so neither are its downstream nodes.
+     */
+    public synchronized void vetoed(T node) {
+        for (Iterator<Plan<T>> it = plans.iterator(); it.hasNext(); ) {
+            Plan<T> plan = it.next();
+            plan.vetoed(node);
+
+            if (plan.isDone())
+                it.remove();
+        }
+    }
+
+    /**
+     * @return the wave the node is built in by the plan of the given upstream node, or -1 if not planned
+     */
+    public synchronized int getWave(T upstream, T node) {
+        for (Plan<T> plan : plans) {
+            if (plan.root.equals(upstream) || plan.waves.containsKey(upstream)) {
+                Integer wave = plan.waves.get(node);
+                if (wave != null)
+                    return wave;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the affected upstream nodes of a released node that were built by its plan, with the numbers of
+     * their builds, or an empty map if the node wasn't released by a plan
+     */
+    public synchronized Map<T, Integer> getBuiltUpstreams(T node) {
+        for (Plan<T> plan : plans) {
+            if (plan.released.contains(node))
+                return plan.getBuiltUpstreams(node);
+        }
+
+        return Collections.emptyMap();
+    }
+
+    synchronized int getPlanCount() {
+        return plans.size();
+    }
+
+    private void expire(long now) {
+        for (Iterator<Plan<T>> it = plans.iterator(); it.hasNext(); ) {
+            if (now - it.next().created > TIMEOUT)
+                it.remove();
+        }
+    }
+
+    static final class Plan<T> {
+        private final T root;
+        private final int rootBuild;
+        private final long created;
+        // affected node -> affected direct upstream nodes that haven't finished yet
+        private final Map<T, Set<T>> pending = new HashMap<T, Set<T>>();
+        // affected node -> all of its affected direct upstream nodes
+        private final Map<T, Set<T>> upstream = new HashMap<T, Set<T>>();
+        private final Map<T, Set<T>> downstream = new HashMap<T, Set<T>>();
+        private final Map<T, Integer> waves = new HashMap<T, Integer>();
+        private final Map<T, Integer> finished = new HashMap<T, Integer>();
+        private final Set<T> released = new HashSet<T>();
+        private final Set<T> dropped = new HashSet<T>();
+        // nodes with an upstream node that was actually built
+        private final Set<T> changed = new HashSet<T>();
+
+        private Plan(T root, int rootBuild, long created) {
+            this.root = root;
+            this.rootBuild = rootBuild;
+            this.created = created;
+        }
+
+        static <T> Plan<T> create(ReachabilityIndex<T> index, T root, int rootBuild, long now) {
+            int r = index.indexOf(root);
+
+            if (r < 0)
+                return null;
+
+            BitSet affected = index.transitiveDownstream(r);
+            affected.clear(r);
+
+            if (affected.isEmpty())
+                return null;
+
+            Plan<T> plan = new Plan<T>(root, rootBuild, now);
+
+            // layer the affected subgraph, nodes on cycles are left to the usual trigger logic
+            Map<Integer, Integer> remaining = new HashMap<Integer, Integer>();
+            Deque<Integer> ready = new ArrayDeque<Integer>();
+            Map<Integer, Integer> wave = new HashMap<Integer, Integer>();
+            wave.put(r, 0);
+
+            for (int a = affected.nextSetBit(0); a >= 0; a = affected.nextSetBit(a + 1)) {
+                BitSet ups = (BitSet) index.directUpstream(a).clone();
+                ups.and(affected);
+                remaining.put(a, ups.cardinality());
+            }
+
+            ready.add(r);
+
+            while (!ready.isEmpty()) {
+                int u = ready.poll();
+                BitSet downs = index.directDownstream(u);
+
+                for (int d = downs.nextSetBit(0); d >= 0; d = downs.nextSetBit(d + 1)) {
+                    if (!affected.get(d) || d == r)
+                        continue;
+
+                    Integer w = wave.get(d);
+                    wave.put(d, Math.max(w == null ? 0 : w, wave.get(u) + 1));
+
+                    if (u != r) {
+                        int left = remaining.get(d) - 1;
+                        remaining.put(d, left);
+                        if (left == 0)
+                            ready.add(d);
+                    } else if (remaining.get(d) == 0) {
+                        ready.add(d);
+                    }
+                }
+            }
+
+            for (Map.Entry<Integer, Integer> entry : remaining.entrySet()) {
+                if (entry.getValue() > 0)
+                    continue; // on a cycle
+
+                int a = entry.getKey();
+                T node = index.get(a);
+                Set<T> ups = new HashSet<T>();
+
+                for (int u = index.directUpstream(a).nextSetBit(0); u >= 0; u = index.directUpstream(a).nextSetBit(u + 1)) {
+                    if (u == r || (affected.get(u) && remaining.get(u) == 0))
+                        ups.add(index.get(u));
+                }
+
+                plan.pending.put(node, ups);
+                plan.upstream.put(node, new HashSet<T>(ups));
+                plan.waves.put(node, wave.get(a));
+
+                for (T up : ups) {
+                    Set<T> downs = plan.downstream.get(up);
+                    if (downs == null) {
+                        downs = new HashSet<T>();
+                        plan.downstream.put(up, downs);
+                    }
+                    downs.add(node);
+                }
+            }
+
+            if (plan.pending.isEmpty())
+                return null;
+
+            plan.finished(root, rootBuild, true);
+            return plan;
+        }
+
+        boolean isContinuation(T node, int buildNumber) {
+            if (node.equals(root))
+                return buildNumber == rootBuild;
+
+            if (!waves.containsKey(node))
+                return false;
+
+            Integer build = finished.get(node);
+            return build == null || build == buildNumber;
+        }
+
+        void finished(T node, int buildNumber, boolean success) {
+            if (finished.containsKey(node) || (node.equals(root) && buildNumber != rootBuild))
+                return;
+
+            finished.put(node, buildNumber);
+
+            Set<T> downs = downstream.get(node);
+            if (downs == null)
+                return;
+
+            for (T down : downs) {
+                if (success) {
+                    pending.get(down).remove(node);
+                    changed.add(down);
+                } else {
+                    drop(down);
+                }
+            }
+        }
+
+        void skipped(T node, List<T> ready) {
+            if (!waves.containsKey(node) || finished.containsKey(node))
+                return;
+
+            finished.put(node, -1);
+
+            Set<T> downs = downstream.get(node);
+            if (downs == null)
+                return;
+
+            for (T down : downs) {
+                Set<T> ups = pending.get(down);
+                ups.remove(node);
+
+                if (!ups.isEmpty() || dropped.contains(down) || released.contains(down))
+                    continue;
+
+                if (changed.contains(down)) {
+                    released.add(down);
+                    ready.add(down);
+                } else {
+                    skipped(down, ready);
+                }
+            }
+        }
+
+        Map<T, Integer> getBuiltUpstreams(T node) {
+            Map<T, Integer> built = new HashMap<T, Integer>();
+
+            for (T up : upstream.get(node)) {
+                Integer build = finished.get(up);
+                if (build != null && build >= 0)
+                    built.put(up, build);
+            }
+
+            return built;
+        }
+
+        void vetoed(T node) {
+            if (released.contains(node) && !finished.containsKey(node))
+                drop(node);
+        }
+
+        private void drop(T node) {
+            if (!dropped.add(node))
+                return;
+
+            Set<T> downs = downstream.get(node);
+            if (downs != null) {
+                for (T down : downs) {
+                    drop(down);
+                }
+            }
+        }
+
+        Decision release(T node) {
+            Set<T> ups = pending.get(node);
+
+            if (ups == null)
+                return Decision.UNPLANNED;
+
+            if (dropped.contains(node) || !ups.isEmpty() || !released.add(node))
+                return Decision.HOLD;
+
+            return Decision.TRIGGER;
+        }
+
+        boolean isDone() {
+            for (T node : pending.keySet()) {
+                if (!dropped.contains(node) && !finished.containsKey(node))
+                    return false;
+            }
+
+            return true;
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package hudson.plugins.gradle.model;
 
 import java.io.Serializable;
+import java.util.regex.Pattern;
 
 public class Dependency implements Serializable {
 
+    private static final long serialVersionUID = -1248304125402941653L;
+
+    private static final String SNAPSHOT = "-SNAPSHOT";
+
+    // timestamped snapshot as resolved from a Maven repository, e.g. 1.0-20160329.164419-3
+    private static final Pattern UNIQUE_SNAPSHOT = Pattern.compile("-\\d{8}\\.\\d{6}-\\d+$");
+
     private String name;
     private String group;
+    private String version;
 
     public Dependency() {
     }
@@ -18,15 +27,45 @@ public class Dependency implements Serializable {
         return group;
     }
 
+    /**
+     * @return the published or resolved version, or null if unknown (e.g. read from an older dependency store)
+     */
+    public String getVersion() {
+        return version;
+    }
+
     public void setName(String name) {
         this.name = name;
     }
 
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * Checks whether a consumer resolving this dependency picks up the given publication of the same module.
+     * Snapshots match regardless of the timestamp they were resolved with and unknown versions always match.
+     */
+    public boolean isSatisfiedBy(Dependency publication) {
+        if (!equals(publication))
+            return false;
+
+        if (version == null || publication.getVersion() == null)
+            return true;
+
+        return normalizeVersion(version).equals(normalizeVersion(publication.getVersion()));
+    }
+
+    static String normalizeVersion(String version) {
+        return UNIQUE_SNAPSHOT.matcher(version).replaceFirst(SNAPSHOT);
+    }
+
     @Override
     public String toString() {
         return "Dependency{" +
                 "name='" + name + '\'' +
                 ", group='" + group + '\'' +
+                ", version='" + version + '\'' +
                 '}';
     }
 
@@ -34,6 +73,10 @@ public class Dependency implements Serializable {
         this.group = group;
     }
 
+    /**
+     * Dependencies are equal if group and name are equal, the version is deliberately left out so that
+     * consumers and publications of a module can be looked up by each other.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -53,4 +96,4 @@ public class Dependency implements Serializable {
         result = 31 * result + (group != null ? group.hashCode() : 0);
         return result;
     }
-}
\ No newline at end of file
+}
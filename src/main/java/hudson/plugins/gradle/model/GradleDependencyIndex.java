@@ -0,0 +1,305 @@
+package hudson.plugins.gradle.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single file holding the {@link GradleDependencySummary} of every job, so building the first dependency graph
+ * after a restart reads one file instead of deserializing the {@link DependencyStore} of each job.
+ *
+ * The file is a log of length-prefixed records: coordinate strings, each written once and referred to by their
+ * position afterwards, the summaries of jobs and their removals. It is read once when opened, later records of a
+ * job replacing earlier ones, and changes are appended. Once most records are superseded the file is rewritten with
+ * the live ones and the strings they use only. A record cut short by a crash ends the log. If the file can't be
+ * rewritten, the index is no longer used until the next restart, as appending to it could then refer to strings by
+ * the wrong positions.
+ *
+ * Each summary remembers the modification time of the store it was taken from, and is only returned while the
+ * store still has that time, so changes made without the index are never hidden by it.
+ */
+public class GradleDependencyIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(GradleDependencyIndex.class.getName());
+
+    private static final byte STRING = 1;
+    private static final byte JOB = 2;
+    private static final byte REMOVED = 3;
+
+    private static final int NO_STRING = -1;
+
+    private static final int MIN_RECORDS_TO_COMPACT = 64;
+
+    private final File file;
+
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private final Map<String, Entry> jobs = new HashMap<String, Entry>();
+    // job and removal records, superseded ones included
+    private int records;
+    private boolean disabled;
+
+    public GradleDependencyIndex(File file) {
+        this.file = file;
+
+        try {
+            load();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read " + file + ", rebuilding it", e);
+            clear();
+            compact();
+        }
+    }
+
+    private void clear() {
+        strings.clear();
+        stringIds.clear();
+        jobs.clear();
+        records = 0;
+    }
+
+    private void load() throws IOException {
+        if (!file.isFile())
+            return;
+
+        // read into the heap rather than mapped, as a mapping would keep the file from being replaced on Windows
+        byte[] bytes;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+
+        if (read(ByteBuffer.wrap(bytes)) < bytes.length) {
+            LOGGER.log(Level.WARNING, "Ignoring an incomplete record at the end of " + file);
+            compact();
+        }
+    }
+
+    /**
+     * @return the length of the complete records
+     */
+    private long read(ByteBuffer buffer) throws IOException {
+        while (buffer.remaining() >= 5) {
+            int start = buffer.position();
+            byte type = buffer.get();
+            int length = buffer.getInt();
+
+            if (length < 0 || length > buffer.remaining())
+                return start;
+
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+
+            switch (type) {
+                case STRING:
+                    byte[] bytes = new byte[length];
+                    record.get(bytes);
+                    intern(new String(bytes, "UTF-8"));
+                    break;
+                case JOB:
+                    String job = string(record.getInt());
+                    long storeModified = record.getLong();
+                    List<Dependency> publications = readDependencies(record);
+                    List<Dependency> dependencies = readDependencies(record);
+                    jobs.put(job, new Entry(storeModified, new GradleDependencySummary(publications, dependencies)));
+                    records++;
+                    break;
+                case REMOVED:
+                    jobs.remove(string(record.getInt()));
+                    records++;
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+        }
+
+        return buffer.position();
+    }
+
+    private List<Dependency> readDependencies(ByteBuffer record) throws IOException {
+        int count = record.getInt();
+        List<Dependency> dependencies = new ArrayList<Dependency>(count);
+
+        for (int i = 0; i < count; i++) {
+            Dependency dependency = new Dependency();
+            dependency.setGroup(string(record.getInt()));
+            dependency.setName(string(record.getInt()));
+            dependency.setVersion(string(record.getInt()));
+            dependencies.add(dependency);
+        }
+
+        return dependencies;
+    }
+
+    private String string(int id) throws IOException {
+        if (id == NO_STRING)
+            return null;
+
+        if (id < 0 || id >= strings.size())
+            throw new IOException("Unknown string " + id);
+
+        return strings.get(id);
+    }
+
+    private int intern(String value) {
+        strings.add(value);
+        stringIds.put(value, strings.size() - 1);
+        return strings.size() - 1;
+    }
+
+    /**
+     * @param storeModified the modification time of the store of the job
+     * @return the summary of the job, or null if it isn't indexed or was indexed from a different store
+     */
+    public synchronized GradleDependencySummary get(String job, long storeModified) {
+        if (disabled)
+            return null;
+
+        Entry entry = jobs.get(job);
+        return entry != null && entry.storeModified == storeModified ? entry.summary : null;
+    }
+
+    public synchronized void put(String job, long storeModified, GradleDependencySummary summary) {
+        if (disabled)
+            return;
+
+        jobs.put(job, new Entry(storeModified, summary));
+        append(job, storeModified, summary);
+    }
+
+    public synchronized void remove(String job) {
+        if (!disabled && jobs.remove(job) != null)
+            append(job, 0, null);
+    }
+
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+    private void append(String job, long storeModified, GradleDependencySummary summary) {
+        if (records > MIN_RECORDS_TO_COMPACT && records > 2 * jobs.size()) {
+            compact();
+            return;
+        }
+
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Could not create " + dir);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            try {
+                if (summary != null)
+                    writeJob(out, job, storeModified, summary);
+                else
+                    writeRecord(out, REMOVED, idBytes(out, job));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not update " + file + ", rewriting it", e);
+            compact(); // the file may lack strings known here
+        }
+    }
+
+    /**
+     * Rewrites the file with the summaries of the indexed jobs only.
+     */
+    private void compact() {
+        File tmp = new File(file.getPath() + ".tmp");
+        Map<String, Entry> live = new HashMap<String, Entry>(jobs);
+        clear();
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                for (Map.Entry<String, Entry> job : live.entrySet()) {
+                    writeJob(out, job.getKey(), job.getValue().storeModified, job.getValue().summary);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!file.delete() && file.exists() || !tmp.renameTo(file))
+                throw new IOException("Could not replace " + file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not compact " + file + ", no longer using it", e);
+            tmp.delete();
+            file.delete(); // the strings written so far may not match the file anymore
+            clear();
+            disabled = true;
+            return;
+        }
+
+        jobs.putAll(live);
+    }
+
+    private void writeJob(DataOutputStream out, String job, long storeModified, GradleDependencySummary summary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+
+        record.writeInt(id(out, job));
+        record.writeLong(storeModified);
+        writeDependencies(out, record, summary.getPublications());
+        writeDependencies(out, record, summary.getDependencies());
+
+        writeRecord(out, JOB, bytes.toByteArray());
+    }
+
+    private void writeDependencies(DataOutputStream out, DataOutputStream record, List<Dependency> dependencies) throws IOException {
+        record.writeInt(dependencies.size());
+
+        for (Dependency dependency : dependencies) {
+            record.writeInt(id(out, dependency.getGroup()));
+            record.writeInt(id(out, dependency.getName()));
+            record.writeInt(id(out, dependency.getVersion()));
+        }
+    }
+
+    private byte[] idBytes(DataOutputStream out, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(id(out, value));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the id of the string, writing it first if it is new
+     */
+    private int id(DataOutputStream out, String value) throws IOException {
+        if (value == null)
+            return NO_STRING;
+
+        Integer id = stringIds.get(value);
+        if (id != null)
+            return id;
+
+        writeRecord(out, STRING, value.getBytes("UTF-8"));
+        return intern(value);
+    }
+
+    private void writeRecord(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+
+        if (type != STRING)
+            records++;
+    }
+
+    private static final class Entry {
+        private final long storeModified;
+        private final GradleDependencySummary summary;
+
+        private Entry(long storeModified, GradleDependencySummary summary) {
+            this.storeModified = storeModified;
+            this.summary = summary;
+        }
+    }
+}
@@ -3,16 +3,19 @@ package hudson.plugins.gradle.model;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class GradleDependencyInfo implements Serializable {
-    private static long serialVersionUID = 1113799434508676095L;
+    // the value computed for the original class, which declared a non-final one
+    private static final long serialVersionUID = 234898329323529374L;
 
     @Override
     public String toString() {
         return "GradleDependencyInfo{" +
                 "gradleFile=" + gradleFile +
                 ", name='" + name + '\'' +
+                ", path='" + path + '\'' +
                 ", isMultiProject=" + isMultiProject +
                 ", children=" + children +
                 ", dependencies=" + dependencies +
@@ -28,23 +31,39 @@ public class GradleDependencyInfo implements Serializable {
 
         private final String name;
         private final String group;
+        private final String version;
 
         public DefaultDependencyFilter(String group, String name) {
+            this(group, name, null);
+        }
+
+        /**
+         * @param version the version to match as well, or null to match any version. Timestamped snapshots match
+         *                regardless of their timestamp, as in {@link Dependency#isSatisfiedBy}
+         */
+        public DefaultDependencyFilter(String group, String name, String version) {
             this.group = group;
             this.name = name;
+            this.version = version;
         }
 
         public boolean accept(Dependency dependency) {
-            return group.equalsIgnoreCase(dependency.getGroup()) && name.equalsIgnoreCase(dependency.getName());
+            return group.equalsIgnoreCase(dependency.getGroup()) && name.equalsIgnoreCase(dependency.getName())
+                    && (version == null || dependency.getVersion() != null
+                    && Dependency.normalizeVersion(version).equals(Dependency.normalizeVersion(dependency.getVersion())));
         }
     }
 
     private File gradleFile;
     private String name;
+    private String path;
+    private File projectDirectory;
+    private List<File> projectDependencies;
     private boolean isMultiProject;
     private List<GradleDependencyInfo> children;
     private List<Dependency> dependencies;
     private List<Dependency> publications;
+    private List<String> tasks;
 
     public void setGradleFile(File gradleFile) {
         this.gradleFile = gradleFile;
@@ -54,6 +73,18 @@ public class GradleDependencyInfo implements Serializable {
         this.name = name;
     }
 
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public void setProjectDirectory(File projectDirectory) {
+        this.projectDirectory = projectDirectory;
+    }
+
+    public void setProjectDependencies(List<File> projectDependencies) {
+        this.projectDependencies = projectDependencies;
+    }
+
     public void setMultiProject(boolean isMultiProject) {
         this.isMultiProject = isMultiProject;
     }
@@ -66,6 +97,10 @@ public class GradleDependencyInfo implements Serializable {
         this.dependencies = dependencies;
     }
 
+    public void setTasks(List<String> tasks) {
+        this.tasks = tasks;
+    }
+
     public GradleDependencyInfo() {
     }
 
@@ -75,6 +110,37 @@ public class GradleDependencyInfo implements Serializable {
 
     public File getGradleFile() { return gradleFile; }
 
+    /**
+     * @return the Gradle path of the project, e.g. <tt>:services:api</tt>, or null if unknown
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the project directory, or null if unknown
+     */
+    public File getProjectDirectory() {
+        return projectDirectory;
+    }
+
+    /**
+     * @return the directories of the projects of the same build this project depends on
+     */
+    public List<File> getProjectDependencies() {
+        if (projectDependencies == null)
+            return Collections.emptyList();
+
+        return projectDependencies;
+    }
+
+    /**
+     * @return the names of the tasks of the project, or null if unknown (e.g. read from an older dependency store)
+     */
+    public List<String> getTasks() {
+        return tasks;
+    }
+
     public boolean isMultiProject() {
         return isMultiProject;
     }
@@ -91,6 +157,50 @@ public class GradleDependencyInfo implements Serializable {
         return publications;
     }
 
+    /**
+     * Compares the publications, including their versions, of this and another dependency info and their children
+     * @param other
+     * @return true if the publications match
+     */
+    public boolean compareAllPublications(GradleDependencyInfo other) {
+
+        if (other == null)
+            return false;
+
+        List<Dependency> thisPublications = getAllPublications();
+        List<Dependency> otherPublications = other.getAllPublications();
+
+        if (thisPublications.size() != otherPublications.size())
+            return false;
+
+        for (Dependency publication : thisPublications) {
+            boolean found = false;
+
+            for (Dependency otherPublication : otherPublications) {
+                if (new DefaultDependencyFilter(publication.getGroup(), publication.getName(), publication.getVersion()).accept(otherPublication)) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found)
+                return false;
+        }
+
+        return true;
+    }
+
+    public List<Dependency> getAllPublications() {
+        List<Dependency> all = new ArrayList<Dependency>();
+        all.addAll(getPublications());
+
+        for (GradleDependencyInfo child : getChildGradleDependencyInfos()) {
+            all.addAll(child.getAllPublications());
+        }
+
+        return all;
+    }
+
     /**
      * Compares dependencies only between this and another dependency info
      * @param other
@@ -105,6 +215,10 @@ public class GradleDependencyInfo implements Serializable {
             return false;
 
         for (Dependency thisDep : getAllDependencies()) {
+            // stored before versions were recorded, so replaced once
+            if (thisDep.getVersion() == null)
+                return false;
+
             List<Dependency> otherDeps = other.getAllDependencies(thisDep);
 
             if (otherDeps == null || otherDeps.size() == 0)
@@ -115,7 +229,7 @@ public class GradleDependencyInfo implements Serializable {
     }
 
     public List<Dependency> getAllDependencies(Dependency dep) {
-        List<Dependency> deps = getAllDependencies(new DefaultDependencyFilter(dep.getGroup(), dep.getName()));
+        List<Dependency> deps = getAllDependencies(new DefaultDependencyFilter(dep.getGroup(), dep.getName(), dep.getVersion()));
         return deps;
     }
 
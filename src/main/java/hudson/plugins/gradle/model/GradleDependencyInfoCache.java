@@ -0,0 +1,50 @@
+package hudson.plugins.gradle.model;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the full dependency models of jobs, bounded to a number of jobs by evicting the least recently used
+ * ones. Entries are softly referenced as well, so the garbage collector may drop them under memory pressure;
+ * evicted models are read again from their {@link DependencyStore}.
+ */
+public class GradleDependencyInfoCache {
+
+    private final Map<String, SoftReference<List<GradleDependencyInfo>>> entries;
+
+    public GradleDependencyInfoCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, SoftReference<List<GradleDependencyInfo>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SoftReference<List<GradleDependencyInfo>>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached models, or null if they aren't cached or were collected
+     */
+    public synchronized List<GradleDependencyInfo> get(String key) {
+        SoftReference<List<GradleDependencyInfo>> reference = entries.get(key);
+        List<GradleDependencyInfo> infos = reference != null ? reference.get() : null;
+
+        if (reference != null && infos == null)
+            entries.remove(key);
+
+        return infos;
+    }
+
+    public synchronized void put(String key, List<GradleDependencyInfo> infos) {
+        entries.put(key, new SoftReference<List<GradleDependencyInfo>>(infos));
+    }
+
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -1,11 +1,14 @@
 package hudson.plugins.gradle.model;
 
 
+import org.gradle.tooling.CancellationToken;
 import org.gradle.tooling.GradleConnector;
 import org.gradle.tooling.ModelBuilder;
 import org.gradle.tooling.ProjectConnection;
 import org.gradle.tooling.model.ExternalDependency;
+import org.gradle.tooling.model.GradleTask;
 import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.eclipse.EclipseProjectDependency;
 import org.gradle.tooling.model.gradle.GradlePublication;
 import org.gradle.tooling.model.gradle.ProjectPublications;
 
@@ -14,7 +17,28 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class GradleDependencyInfoFactory {
+
+    private final String[] jvmArguments;
+
+    public GradleDependencyInfoFactory() {
+        this(new String[0]);
+    }
+
+    /**
+     * @param jvmArguments the JVM arguments of the daemons running the build scripts, such as a heap limit
+     */
+    public GradleDependencyInfoFactory(String... jvmArguments) {
+        this.jvmArguments = jvmArguments;
+    }
+
     public GradleDependencyInfo newInstance(File gradleFile) {
+        return newInstance(gradleFile, null);
+    }
+
+    /**
+     * @param cancellationToken stops the build scripts in the daemon when cancelled, or null
+     */
+    public GradleDependencyInfo newInstance(File gradleFile, CancellationToken cancellationToken) {
         GradleConnector connector = GradleConnector.newConnector();
         connector.forProjectDirectory(gradleFile.getParentFile());
 
@@ -24,14 +48,16 @@ public class GradleDependencyInfoFactory {
             connection = connector.connect();
             ModelBuilder<EclipseProject> customModelBuilder = connection.model(EclipseProject.class);
             setModelArguments(gradleFile, customModelBuilder);
+            setDaemonArguments(cancellationToken, customModelBuilder);
 
             ModelBuilder<ProjectPublications> projectPublicationsModelBuilder = connection.model(ProjectPublications.class);
             setModelArguments(gradleFile, projectPublicationsModelBuilder);
+            setDaemonArguments(cancellationToken, projectPublicationsModelBuilder);
 
             ProjectPublications publications = projectPublicationsModelBuilder.get();
             EclipseProject eclipseProject = customModelBuilder.get();
 
-            GradleDependencyInfo gradleDependencyInfo = createGradleDependencyInfo(eclipseProject, publications, projectPublicationsModelBuilder);
+            GradleDependencyInfo gradleDependencyInfo = createGradleDependencyInfo(eclipseProject, publications, projectPublicationsModelBuilder, cancellationToken);
 
             return gradleDependencyInfo;
 
@@ -50,11 +76,22 @@ public class GradleDependencyInfoFactory {
         customModelBuilder.withArguments("-b", gradleFile.getAbsolutePath());
     }
 
-    private GradleDependencyInfo createGradleDependencyInfo(EclipseProject eclipseProject, ProjectPublications publications, ModelBuilder<ProjectPublications> projectPublicationsModelBuilder) {
+    private void setDaemonArguments(CancellationToken cancellationToken, ModelBuilder<?> customModelBuilder) {
+
+        if (jvmArguments.length > 0)
+            customModelBuilder.setJvmArguments(jvmArguments);
+
+        if (cancellationToken != null)
+            customModelBuilder.withCancellationToken(cancellationToken);
+    }
+
+    private GradleDependencyInfo createGradleDependencyInfo(EclipseProject eclipseProject, ProjectPublications publications, ModelBuilder<ProjectPublications> projectPublicationsModelBuilder, CancellationToken cancellationToken) {
 
         GradleDependencyInfo gradleDependencyInfo = new GradleDependencyInfo();
 
         gradleDependencyInfo.setName(eclipseProject.getGradleProject().getName());
+        gradleDependencyInfo.setPath(eclipseProject.getGradleProject().getPath());
+        gradleDependencyInfo.setProjectDirectory(eclipseProject.getProjectDirectory());
 
         List<Dependency> publishedDependencies = new ArrayList<Dependency>();
 
@@ -62,6 +99,7 @@ public class GradleDependencyInfoFactory {
             Dependency publishedDependency = new Dependency();
             publishedDependency.setGroup(publication.getId().getGroup());
             publishedDependency.setName(publication.getId().getName());
+            publishedDependency.setVersion(publication.getId().getVersion());
             publishedDependencies.add(publishedDependency);
         }
 
@@ -70,6 +108,14 @@ public class GradleDependencyInfoFactory {
 
         gradleDependencyInfo.setGradleFile(eclipseProject.getGradleProject().getBuildScript().getSourceFile());
 
+        List<String> tasks = new ArrayList<String>();
+
+        for (GradleTask task : eclipseProject.getGradleProject().getTasks()) {
+            tasks.add(task.getName());
+        }
+
+        gradleDependencyInfo.setTasks(tasks);
+
         List<Dependency> dependencies = new ArrayList<Dependency>();
 
         if (eclipseProject.getClasspath() != null) {
@@ -77,12 +123,21 @@ public class GradleDependencyInfoFactory {
                 Dependency dependency = new Dependency();
                 dependency.setName(dep.getGradleModuleVersion().getName());
                 dependency.setGroup(dep.getGradleModuleVersion().getGroup());
+                dependency.setVersion(dep.getGradleModuleVersion().getVersion());
                 dependencies.add(dependency);
             }
         }
 
         gradleDependencyInfo.setDependencies(dependencies);
 
+        List<File> projectDependencies = new ArrayList<File>();
+
+        for (EclipseProjectDependency dep : eclipseProject.getProjectDependencies()) {
+            projectDependencies.add(dep.getTargetProject().getProjectDirectory());
+        }
+
+        gradleDependencyInfo.setProjectDependencies(projectDependencies);
+
         List<GradleDependencyInfo> children = new ArrayList<GradleDependencyInfo>();
 
         for (EclipseProject childProject : eclipseProject.getChildren()) {
@@ -90,13 +145,13 @@ public class GradleDependencyInfoFactory {
 
             if (hasChildBuildScript(childProject)) {
                 setModelArguments(childProject.getGradleProject().getBuildScript().getSourceFile(), projectPublicationsModelBuilder);
-                childDependencyInfo = createGradleDependencyInfo(childProject, projectPublicationsModelBuilder.get(), projectPublicationsModelBuilder);
+                childDependencyInfo = createGradleDependencyInfo(childProject, projectPublicationsModelBuilder.get(), projectPublicationsModelBuilder, cancellationToken);
                 setModelArguments(gradleDependencyInfo.getGradleFile(), projectPublicationsModelBuilder);
             }
             else {
                 // children without a build script file need a new connection to the project directory ??
                 // even though this file doesn't exist, the build arguments will not be set
-                childDependencyInfo = newInstance(childProject.getGradleProject().getBuildScript().getSourceFile());
+                childDependencyInfo = newInstance(childProject.getGradleProject().getBuildScript().getSourceFile(), cancellationToken);
             }
 
             children.add(childDependencyInfo);
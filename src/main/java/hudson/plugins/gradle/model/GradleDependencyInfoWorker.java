@@ -0,0 +1,81 @@
+package hudson.plugins.gradle.model;
+
+import org.gradle.tooling.CancellationToken;
+import org.gradle.tooling.CancellationTokenSource;
+import org.gradle.tooling.GradleConnector;
+
+import java.io.*;
+
+/**
+ * Entry point of a child JVM resolving dependency models for the controller.
+ *
+ * Reads the paths of build files as serialized strings from standard input and answers each with the serialized
+ * {@link GradleDependencyInfo}, or with a string describing why it couldn't be resolved. A null request cancels the
+ * resolution in progress, which stops its build scripts in the Gradle daemon. The arguments are the JVM arguments of
+ * that daemon. Anything printed by the Tooling API goes to standard error, which keeps standard output for the
+ * answers. Cancels and exits when standard input is closed, so workers don't outlive the controller.
+ */
+public class GradleDependencyInfoWorker {
+
+    public static void main(String[] args) throws IOException {
+        OutputStream protocol = System.out;
+        System.setOut(System.err);
+
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(protocol));
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(System.in));
+
+        GradleDependencyInfoFactory factory = new GradleDependencyInfoFactory(args);
+        CancellationTokenSource cancellation = null;
+
+        while (true) {
+            String path;
+            try {
+                path = (String) in.readObject();
+            } catch (EOFException e) {
+                if (cancellation != null)
+                    cancellation.cancel();
+                return;
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e.getMessage());
+            }
+
+            if (path == null) {
+                if (cancellation != null)
+                    cancellation.cancel();
+                continue;
+            }
+
+            cancellation = GradleConnector.newCancellationTokenSource();
+            resolve(factory, new File(path), cancellation.token(), out);
+        }
+    }
+
+    /**
+     * Resolves on a thread of its own, so the main thread keeps reading cancellations meanwhile.
+     */
+    private static void resolve(final GradleDependencyInfoFactory factory, final File file,
+                                final CancellationToken token, final ObjectOutputStream out) {
+        new Thread("Resolving " + file) {
+            @Override
+            public void run() {
+                Object answer;
+                try {
+                    answer = factory.newInstance(file, token);
+                } catch (RuntimeException e) {
+                    answer = e.toString();
+                }
+
+                try {
+                    synchronized (out) {
+                        out.writeObject(answer);
+                        out.reset();
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // the controller is gone
+                }
+            }
+        }.start();
+    }
+}
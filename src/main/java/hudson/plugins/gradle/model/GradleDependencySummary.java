@@ -0,0 +1,51 @@
+package hudson.plugins.gradle.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The part of the dependency models of a job needed to build the dependency graph: the publications and the
+ * dependencies of the root projects and of their direct children, without the rest of the trees.
+ */
+public class GradleDependencySummary {
+
+    private final List<Dependency> publications;
+    private final List<Dependency> dependencies;
+
+    public GradleDependencySummary(List<GradleDependencyInfo> infos) {
+        this(collect(infos, true), collect(infos, false));
+    }
+
+    public GradleDependencySummary(List<Dependency> publications, List<Dependency> dependencies) {
+        this.publications = Collections.unmodifiableList(publications);
+        this.dependencies = Collections.unmodifiableList(dependencies);
+    }
+
+    private static List<Dependency> collect(List<GradleDependencyInfo> infos, boolean publications) {
+        List<Dependency> all = new ArrayList<Dependency>();
+
+        for (GradleDependencyInfo info : infos) {
+            if (info.isMultiProject()) {
+                for (GradleDependencyInfo child : info.getChildGradleDependencyInfos()) {
+                    all.addAll(publications ? child.getPublications() : child.getDependencies());
+                }
+            }
+            all.addAll(publications ? info.getPublications() : info.getDependencies());
+        }
+
+        return all;
+    }
+
+    public List<Dependency> getPublications() {
+        return publications;
+    }
+
+    public List<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    public boolean isEmpty() {
+        return publications.isEmpty() && dependencies.isEmpty();
+    }
+}
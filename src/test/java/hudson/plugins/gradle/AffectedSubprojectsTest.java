@@ -0,0 +1,132 @@
+package hudson.plugins.gradle;
+
+import hudson.plugins.gradle.model.GradleDependencyInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AffectedSubprojectsTest {
+
+    private static final String WORKSPACE = "/ws";
+
+    private GradleDependencyInfo root;
+    private Map<String, GradleDependencyInfo> projects;
+
+    @Before
+    public void setUp() {
+        projects = new HashMap<String, GradleDependencyInfo>();
+        root = project(":", "/ws");
+        root.setChildren(new ArrayList<GradleDependencyInfo>());
+
+        subproject(":core", "/ws/core");
+        subproject(":api", "/ws/api", ":core");
+        subproject(":web", "/ws/web", ":api");
+        subproject(":tools", "/ws/tools");
+    }
+
+    @Test
+    public void dependentsAreAffected() {
+        assertEquals(Arrays.asList(":api", ":core", ":web"), affected("core/src/main/java/Core.java"));
+        assertEquals(Arrays.asList(":web"), affected("web/build.gradle"));
+        assertEquals(Arrays.asList(":tools", ":web"), affected("web/index.html", "tools/x.sh"));
+    }
+
+    @Test
+    public void rootChangesAffectEverything() {
+        assertNull(affected("settings.gradle"));
+        assertNull(affected("core/Core.java", "gradle/libs.gradle"));
+        assertNull(affected());
+    }
+
+    @Test
+    public void changesOutsideOfTheBuild() {
+        root = project(":", "/ws/build");
+        root.setChildren(new ArrayList<GradleDependencyInfo>());
+        subproject(":core", "/ws/build/core");
+
+        assertEquals(Arrays.asList(":core"), affected("README", "build/core/Core.java"));
+        assertNull(affected("README"));
+    }
+
+    @Test
+    public void rewriteTasks() {
+        List<String> paths = Arrays.asList(":a", ":b");
+        Map<String, List<String>> tasks = tasks("clean build test check", "clean build test check");
+
+        assertEquals(":a:clean :b:clean :a:build :b:build", AffectedSubprojects.rewriteTasks("clean build", paths, tasks));
+        assertEquals(":a:build :b:build -x test :c:check --info",
+                AffectedSubprojects.rewriteTasks(" build -x test\t:c:check --info", paths, tasks));
+    }
+
+    @Test
+    public void rewriteTasksKeepsOptionArguments() {
+        List<String> paths = Arrays.asList(":a");
+        Map<String, List<String>> tasks = tasks("build test check", "build");
+
+        assertEquals(":a:test --tests *Foo*", AffectedSubprojects.rewriteTasks("test --tests *Foo*", paths, tasks));
+        assertEquals("-b sub/build.gradle -c settings.gradle :a:build",
+                AffectedSubprojects.rewriteTasks("-b sub/build.gradle -c settings.gradle build", paths, tasks));
+        assertEquals("-I init.gradle --init-script other.gradle -p dir -g home :a:build",
+                AffectedSubprojects.rewriteTasks("-I init.gradle --init-script other.gradle -p dir -g home build", paths, tasks));
+        assertEquals("--console plain -Pversion=1 --warning-mode all :a:build --console=rich :a:check",
+                AffectedSubprojects.rewriteTasks("--console plain -Pversion=1 --warning-mode all build --console=rich check", paths, tasks));
+    }
+
+    @Test
+    public void tasksAreOnlyQualifiedForProjectsHavingThem() {
+        List<String> paths = Arrays.asList(":a", ":b");
+        Map<String, List<String>> tasks = tasks("build publish", "build");
+
+        assertEquals(":a:build :b:build :a:publish", AffectedSubprojects.rewriteTasks("build publish", paths, tasks));
+        assertEquals(":b:build", AffectedSubprojects.rewriteTasks("build publish", Arrays.asList(":b"), tasks));
+        assertNull(AffectedSubprojects.rewriteTasks("publish", Arrays.asList(":b"), tasks));
+    }
+
+    @Test
+    public void unknownTasksAreNotNarrowed() {
+        List<String> paths = Arrays.asList(":a");
+
+        assertNull(AffectedSubprojects.rewriteTasks("cJ", paths, tasks("compileJava", "compileJava")));
+
+        Map<String, List<String>> tasks = tasks("build", "build");
+        tasks.put(":b", null);
+        assertNull(AffectedSubprojects.rewriteTasks("build", paths, tasks));
+    }
+
+    private static Map<String, List<String>> tasks(String a, String b) {
+        Map<String, List<String>> tasks = new HashMap<String, List<String>>();
+        tasks.put(":", Collections.<String>emptyList());
+        tasks.put(":a", Arrays.asList(a.split(" ")));
+        tasks.put(":b", Arrays.asList(b.split(" ")));
+        return tasks;
+    }
+
+    private List<String> affected(String... changes) {
+        return new AffectedSubprojects(root).getAffected(WORKSPACE, Arrays.asList(changes));
+    }
+
+    private GradleDependencyInfo project(String path, String dir) {
+        GradleDependencyInfo project = new GradleDependencyInfo();
+        project.setPath(path);
+        project.setProjectDirectory(new File(dir));
+        projects.put(path, project);
+        return project;
+    }
+
+    private void subproject(String path, String dir, String... dependencies) {
+        GradleDependencyInfo project = project(path, dir);
+        List<File> dirs = new ArrayList<File>();
+
+        for (String dependency : dependencies) {
+            dirs.add(projects.get(dependency).getProjectDirectory());
+        }
+
+        project.setProjectDependencies(dirs);
+        root.getChildGradleDependencyInfos().add(project);
+    }
+}
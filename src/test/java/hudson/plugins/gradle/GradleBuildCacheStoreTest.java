@@ -0,0 +1,96 @@
+package hudson.plugins.gradle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GradleBuildCacheStoreTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("build-cache", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void storedEntryIsServed() throws Exception {
+        GradleBuildCacheStore store = new GradleBuildCacheStore(dir, 100);
+        put(store, "aa", "content");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(store.get("aa", out));
+        assertEquals("content", out.toString("UTF-8"));
+        assertFalse(store.get("bb", new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        GradleBuildCacheStore store = new GradleBuildCacheStore(dir, 10);
+        put(store, "aa", "1234");
+        put(store, "bb", "1234");
+        store.get("aa", new ByteArrayOutputStream());
+        put(store, "cc", "1234");
+
+        assertTrue(store.contains("aa"));
+        assertFalse(store.contains("bb"));
+        assertTrue(store.contains("cc"));
+        assertEquals(8, store.getBytes());
+        assertEquals(1, store.getEvictions());
+    }
+
+    @Test
+    public void entryLargerThanTheStoreIsRejected() throws Exception {
+        GradleBuildCacheStore store = new GradleBuildCacheStore(dir, 10);
+        put(store, "aa", "1234");
+
+        assertFalse(store.put("bb", new ByteArrayInputStream(new byte[11])));
+        assertTrue(store.put("cc", new ByteArrayInputStream(new byte[6])));
+
+        assertFalse(store.contains("bb"));
+        assertTrue(store.contains("aa"));
+        assertEquals(10, store.getBytes());
+        assertEquals(2, dir.list().length);
+    }
+
+    @Test
+    public void entriesSurviveRestart() throws Exception {
+        put(new GradleBuildCacheStore(dir, 100), "aa", "1234");
+
+        GradleBuildCacheStore store = new GradleBuildCacheStore(dir, 100);
+        assertTrue(store.contains("aa"));
+        assertEquals(4, store.getBytes());
+    }
+
+    @Test
+    public void onlyHexKeysAreValid() {
+        assertTrue(GradleBuildCacheStore.isValidKey("0123456789abcdef"));
+        assertFalse(GradleBuildCacheStore.isValidKey("../config.xml"));
+        assertFalse(GradleBuildCacheStore.isValidKey(""));
+    }
+
+    private static void put(GradleBuildCacheStore store, String key, String content) throws IOException {
+        store.put(key, new ByteArrayInputStream(content.getBytes("UTF-8")));
+    }
+}
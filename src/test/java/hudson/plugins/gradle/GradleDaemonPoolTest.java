@@ -0,0 +1,115 @@
+package hudson.plugins.gradle;
+
+import hudson.EnvVars;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GradleDaemonPoolTest {
+
+    private int maxDaemons;
+    private GradleDaemonPool pool;
+    private long now;
+
+    @Before
+    public void setUp() {
+        maxDaemons = GradleDaemonPool.MAX_DAEMONS_PER_NODE;
+        GradleDaemonPool.MAX_DAEMONS_PER_NODE = 3;
+        pool = new GradleDaemonPool();
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void tearDown() {
+        GradleDaemonPool.MAX_DAEMONS_PER_NODE = maxDaemons;
+    }
+
+    @Test
+    public void concurrentLeasesCountAsDaemons() {
+        GradleDaemonPool.Daemon a = lease("a");
+        lease("a");
+        lease("a");
+        release(a, 3);
+
+        List<GradleDaemonPool.Daemon> evicted = new ArrayList<GradleDaemonPool.Daemon>();
+        pool.lease(key("b"), "b", "pwd", new EnvVars(), now, evicted);
+
+        assertEquals(Collections.singletonList(a), evicted);
+    }
+
+    @Test
+    public void reusingAnIdleDaemonNeedsNoRoom() {
+        GradleDaemonPool.Daemon a = lease("a");
+        lease("a");
+        release(a, 1);
+        GradleDaemonPool.Daemon b = lease("b");
+        pool.release(b, true);
+
+        List<GradleDaemonPool.Daemon> evicted = new ArrayList<GradleDaemonPool.Daemon>();
+        pool.lease(key("a"), "a", "pwd", new EnvVars(), now, evicted);
+
+        assertTrue(evicted.isEmpty());
+    }
+
+    @Test
+    public void busyDaemonsAreNeverEvicted() {
+        lease("a");
+        lease("a");
+        lease("b");
+
+        List<GradleDaemonPool.Daemon> evicted = new ArrayList<GradleDaemonPool.Daemon>();
+        pool.lease(key("c"), "c", "pwd", new EnvVars(), now, evicted);
+
+        assertTrue(evicted.isEmpty());
+    }
+
+    @Test
+    public void idleDaemonsAreEvictedBelowTheBound() {
+        GradleDaemonPool.Daemon a = lease("a");
+        pool.release(a, true);
+
+        List<GradleDaemonPool.Daemon> evicted = new ArrayList<GradleDaemonPool.Daemon>();
+        pool.lease(key("b"), "b", "pwd", new EnvVars(),
+                now + TimeUnit.MINUTES.toMillis(GradleDaemonPool.MAX_IDLE_MINUTES) + 1000, evicted);
+
+        assertEquals(Collections.singletonList(a), evicted);
+    }
+
+    @Test
+    public void unhealthyDaemonIsReplaced() {
+        GradleDaemonPool.Daemon a = lease("a");
+        pool.release(a, false);
+
+        List<GradleDaemonPool.Daemon> evicted = new ArrayList<GradleDaemonPool.Daemon>();
+        GradleDaemonPool.Daemon replacement = pool.lease(key("a"), "a", "pwd", new EnvVars(), now, evicted);
+
+        assertEquals(Collections.singletonList(a), evicted);
+        assertNotSame(a, replacement);
+        assertSame(replacement, lease("a"));
+    }
+
+    private GradleDaemonPool.Daemon lease(String name) {
+        List<GradleDaemonPool.Daemon> evicted = new ArrayList<GradleDaemonPool.Daemon>();
+        GradleDaemonPool.Daemon daemon = pool.lease(key(name), name, "pwd", new EnvVars(), now, evicted);
+        assertTrue(evicted.isEmpty());
+        return daemon;
+    }
+
+    private void release(GradleDaemonPool.Daemon daemon, int times) {
+        for (int i = 0; i < times; i++) {
+            pool.release(daemon, true);
+        }
+    }
+
+    private static GradleDaemonPool.DaemonKey key(String executable) {
+        return new GradleDaemonPool.DaemonKey("node", executable, null, null);
+    }
+}
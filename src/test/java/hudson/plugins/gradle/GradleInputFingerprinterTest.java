@@ -0,0 +1,138 @@
+package hudson.plugins.gradle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class GradleInputFingerprinterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("fingerprint", "");
+        dir.delete();
+        dir.mkdirs();
+
+        write("build.gradle", "apply plugin: 'java'");
+        write("src/main/java/A.java", "class A {}");
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void unchangedInputs() throws Exception {
+        assertEquals(fingerprint("tasks"), fingerprint("tasks"));
+    }
+
+    @Test
+    public void changedSources() throws Exception {
+        String before = fingerprint("tasks");
+        write("src/main/java/A.java", "class A { int a; }");
+
+        assertFalse(before.equals(fingerprint("tasks")));
+    }
+
+    @Test
+    public void touchedFileIsHashedAgain() throws Exception {
+        String before = fingerprint("tasks");
+        new File(dir, "src/main/java/A.java").setLastModified(System.currentTimeMillis() - 60000);
+
+        assertEquals(before, fingerprint("tasks"));
+    }
+
+    @Test
+    public void outputsAndMetadataAreIgnored() throws Exception {
+        String before = fingerprint("tasks");
+        write("build/classes/A.class", "binary");
+        write(".git/index", "index");
+        write("src/main/java/build/B.java", "class B {}");
+
+        // only the source in a package named build counts
+        String after = fingerprint("tasks");
+        assertFalse(before.equals(after));
+        new File(dir, "src/main/java/build/B.java").delete();
+        assertEquals(before, fingerprint("tasks"));
+    }
+
+    @Test
+    public void userHomeInWorkspaceIsIgnored() throws Exception {
+        String before = fingerprint("tasks");
+        write("caches/modules-2/lib.jar", "jar");
+        write("wrapper/dists/gradle.zip", "zip");
+
+        assertEquals(before, new GradleInputFingerprinter("tasks", dir.getPath()).invoke(dir, null));
+        assertFalse(before.equals(fingerprint("tasks")));
+    }
+
+    @Test
+    public void outputsOfGradleProjects() throws Exception {
+        write("build/classes/A.class", "binary");
+        write("sub/build.gradle", "");
+        write("sub/build/libs/sub.jar", "jar");
+        write("src/main/java/build/B.java", "class B {}");
+
+        assertEquals(Arrays.asList("build", "sub/build"), new GradleInputFingerprinter.Outputs(null).invoke(dir, null));
+    }
+
+    @Test
+    public void externalInputs() throws Exception {
+        assertFalse(fingerprint("build").equals(fingerprint("build -x test")));
+    }
+
+    @Test
+    public void stepDependsOnGradleAndJdk() {
+        String step = step("gradle-8", "/opt/gradle-8", false, "/opt/jdk-17", false);
+
+        assertEquals(step, step("gradle-8", "/opt/gradle-8", false, "/opt/jdk-17", false));
+        assertFalse(step.equals(step("gradle-9", "/opt/gradle-8", false, "/opt/jdk-17", false)));
+        assertFalse(step.equals(step("gradle-8", "/opt/gradle-9", false, "/opt/jdk-17", false)));
+        assertFalse(step.equals(step("gradle-8", "/opt/gradle-8", true, "/opt/jdk-17", false)));
+        assertFalse(step.equals(step("gradle-8", "/opt/gradle-8", false, "/opt/jdk-21", false)));
+        assertFalse(step.equals(step("gradle-8", "/opt/gradle-8", false, null, false)));
+        assertFalse(step.equals(step("gradle-8", "/opt/gradle-8", false, "/opt/jdk-17", true)));
+    }
+
+    private static String step(String gradleName, String gradleHome, boolean useWrapper, String javaHome,
+                               boolean useToolingApi) {
+        return GradleInputFingerprinter.describeStep("--offline", "build", null, null, gradleName, gradleHome,
+                useWrapper, javaHome, useToolingApi);
+    }
+
+    private String fingerprint(String externalInputs) throws Exception {
+        return new GradleInputFingerprinter(externalInputs).invoke(dir, null);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,54 @@
+package hudson.plugins.gradle;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GradleResourceTunerTest {
+
+    @Test
+    public void workersAreSharedByBusyExecutors() {
+        assertEquals(32, GradleResourceTuner.workersFor(32, 1));
+        assertEquals(4, GradleResourceTuner.workersFor(32, 8));
+        assertEquals(1, GradleResourceTuner.workersFor(2, 8));
+        assertEquals(4, GradleResourceTuner.workersFor(4, 0));
+    }
+
+    @Test
+    public void heapIsSharedAndBounded() {
+        assertEquals(4096, GradleResourceTuner.heapMbFor(65536, 8));
+        assertEquals(8192, GradleResourceTuner.heapMbFor(65536, 1));
+        assertEquals(256, GradleResourceTuner.heapMbFor(2048, 8));
+        assertEquals(-1, GradleResourceTuner.heapMbFor(-1, 1));
+    }
+
+    @Test
+    public void userOptionsAreKept() {
+        assertTrue(GradleResourceTuner.isConfigured("--info --max-workers=2 build", "--max-workers"));
+        assertTrue(GradleResourceTuner.isConfigured("-Dorg.gradle.workers.max=2", "--max-workers", "org.gradle.workers.max"));
+        assertFalse(GradleResourceTuner.isConfigured("--parallel build", "--max-workers", "org.gradle.workers.max"));
+    }
+
+    @Test
+    public void gradlePropertiesAreKept() {
+        Properties properties = new Properties();
+        properties.setProperty("org.gradle.jvmargs", "-Dfile.encoding=UTF-8 -Xmx2g");
+
+        assertTrue(GradleResourceTuner.isConfigured(properties, "org.gradle.jvmargs", "-Xmx"));
+        assertFalse(GradleResourceTuner.isConfigured(properties, "org.gradle.workers.max", null));
+
+        properties.setProperty("org.gradle.jvmargs", "-Dfile.encoding=UTF-8");
+        assertFalse(GradleResourceTuner.isConfigured(properties, "org.gradle.jvmargs", "-Xmx"));
+    }
+
+    @Test
+    public void heapIsMergedIntoConfiguredJvmArgs() {
+        assertEquals("-Xmx1024m", GradleResourceTuner.mergeHeap(null, "-Xmx1024m"));
+        assertEquals("-Dfile.encoding=UTF-8 -XX:MaxMetaspaceSize=512m -Xmx1024m",
+                GradleResourceTuner.mergeHeap(" -Xmx2g -Dfile.encoding=UTF-8\t-XX:MaxMetaspaceSize=512m ", "-Xmx1024m"));
+    }
+}
@@ -0,0 +1,56 @@
+package hudson.plugins.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GradleSharedUserHomeTest {
+
+    @Test
+    public void versionIsReadFromWrapperUrlsAndLauncherJars() {
+        assertEquals("6.2", GradleSharedUserHome.parseVersion("https\\://services.gradle.org/distributions/gradle-6.2.1-bin.zip"));
+        assertEquals("2.14", GradleSharedUserHome.parseVersion("gradle-launcher-2.14.jar"));
+        assertNull(GradleSharedUserHome.parseVersion("https\\://example.com/distributions/custom.zip"));
+        assertNull(GradleSharedUserHome.parseVersion(null));
+    }
+
+    @Test
+    public void readOnlyCacheNeedsGradle62() {
+        assertFalse(GradleSharedUserHome.supportsReadOnlyCache("2.14"));
+        assertFalse(GradleSharedUserHome.supportsReadOnlyCache("6.1"));
+        assertTrue(GradleSharedUserHome.supportsReadOnlyCache("6.2"));
+        assertTrue(GradleSharedUserHome.supportsReadOnlyCache("7.0"));
+        assertFalse(GradleSharedUserHome.supportsReadOnlyCache(null));
+    }
+
+    @Test
+    public void modulesMissingFromTheSharedCacheAreFound() throws IOException {
+        File executor = createTempDir();
+        File shared = createTempDir();
+
+        module(executor, "org.example", "core");
+        module(shared, "org.example", "core");
+        assertFalse(new GradleSharedUserHome.MissingModules(shared.getPath()).invoke(executor, null));
+
+        module(executor, "org.example", "api");
+        assertTrue(new GradleSharedUserHome.MissingModules(shared.getPath()).invoke(executor, null));
+    }
+
+    private static void module(File modules, String group, String name) {
+        assertTrue(new File(new File(new File(modules, "files-2.1"), group), name).mkdirs());
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("modules", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        return dir;
+    }
+}
@@ -0,0 +1,120 @@
+package hudson.plugins.gradle;
+
+import hudson.plugins.gradle.model.Dependency;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class JarContentHasherTest {
+
+    private static final String SOURCE = "public class Answer {\n    int answer() {\n        return 42;\n    }\n}\n";
+
+    private File dir;
+    private JarContentHasher hasher;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("hasher", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+
+        Dependency core = new Dependency();
+        core.setGroup("org");
+        core.setName("core");
+        core.setVersion("1.0");
+        hasher = new JarContentHasher(Collections.singletonList(core));
+    }
+
+    @Test
+    public void commentsDoNotChangeTheHash() throws Exception {
+        byte[] plain = compile(SOURCE);
+        byte[] commented = compile("// shifts every line\n\n" + SOURCE);
+
+        assertFalse(Arrays.equals(plain, commented));
+        assertEquals(hash("plain", "core-1.0.jar", plain), hash("commented", "core-1.0.jar", commented));
+    }
+
+    @Test
+    public void codeChangesChangeTheHash() throws Exception {
+        byte[] plain = compile(SOURCE);
+        byte[] changed = compile(SOURCE.replace("42", "43"));
+
+        assertFalse(hash("plain", "core-1.0.jar", plain).equals(hash("changed", "core-1.0.jar", changed)));
+    }
+
+    @Test
+    public void classifierArchivesAreIgnored() throws Exception {
+        byte[] plain = compile(SOURCE);
+        String hash = hash("plain", "core-1.0.jar", plain);
+
+        jar(new File(dir, "plain"), "core-1.0-sources.jar", "Answer.java", SOURCE.getBytes("UTF-8"));
+        jar(new File(dir, "plain"), "core-1.0-javadoc.jar", "index.html", new byte[] {1});
+
+        assertEquals(hash, hasher.invoke(new File(dir, "plain"), null));
+    }
+
+    @Test
+    public void malformedClassesAreHashedAsIs() {
+        byte[] garbage = {(byte) 0xCA, (byte) 0xFE, 1, 2, 3};
+        assertSame(garbage, JarContentHasher.stripDebugInfo(garbage));
+    }
+
+    private String hash(String project, String archive, byte[] answerClass) throws Exception {
+        File projectDir = new File(dir, project);
+        jar(projectDir, archive, "Answer.class", answerClass);
+        return hasher.invoke(projectDir, null);
+    }
+
+    private static void jar(File projectDir, String archive, String entry, byte[] content) throws IOException {
+        File libs = new File(projectDir, JarContentHasher.LIBS_DIR);
+        libs.mkdirs();
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(libs, archive)));
+        try {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(content);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+
+    private byte[] compile(String source) throws IOException {
+        File sourceDir = File.createTempFile("source", "", dir);
+        sourceDir.delete();
+        sourceDir.mkdirs();
+
+        File sourceFile = new File(sourceDir, "Answer.java");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-g", sourceFile.getPath()));
+
+        File classFile = new File(sourceDir, "Answer.class");
+        byte[] bytes = new byte[(int) classFile.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(classFile));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
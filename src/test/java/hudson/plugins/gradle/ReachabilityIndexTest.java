@@ -0,0 +1,133 @@
+package hudson.plugins.gradle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ReachabilityIndexTest {
+
+    private TestGraph graph;
+
+    @Before
+    public void setUp() {
+        graph = new TestGraph();
+    }
+
+    @Test
+    public void transitiveUpstream() {
+        graph.edge("core", "api");
+        graph.edge("api", "service");
+        graph.edge("service", "web");
+        graph.node("other");
+
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(Arrays.asList("core", "api", "service"), index.getTransitiveUpstream("web"));
+        assertTrue(index.isTransitiveUpstream("core", "web"));
+        assertFalse(index.isTransitiveUpstream("web", "core"));
+        assertTrue(index.getTransitiveUpstream("other").isEmpty());
+    }
+
+    @Test
+    public void unknownNode() {
+        graph.edge("core", "api");
+
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(-1, index.indexOf("unknown"));
+        assertTrue(index.getTransitiveUpstream("unknown").isEmpty());
+        assertFalse(index.hasIntermediate("core", "unknown"));
+    }
+
+    @Test
+    public void intermediateInDiamond() {
+        graph.edge("core", "left");
+        graph.edge("core", "right");
+        graph.edge("left", "app");
+        graph.edge("right", "app");
+        graph.edge("core", "app");
+
+        ReachabilityIndex<String> index = graph.index();
+
+        assertTrue(index.hasIntermediate("core", "app"));
+        assertFalse(index.hasIntermediate("left", "app"));
+        assertFalse(index.hasIntermediate("core", "left"));
+    }
+
+    @Test
+    public void cycle() {
+        graph.edge("a", "b");
+        graph.edge("b", "c");
+        graph.edge("c", "a");
+
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(Arrays.asList("a", "b", "c"), index.getTransitiveUpstream("a"));
+        assertTrue(index.isTransitiveUpstream("a", "a"));
+    }
+
+    @Test
+    public void componentsInTopologicalOrder() {
+        graph.edge("core", "api");
+        graph.edge("api", "fixtures");
+        graph.edge("fixtures", "api");
+        graph.edge("fixtures", "app");
+        graph.node("other");
+
+        ReachabilityIndex<String> index = graph.index();
+        List<List<String>> components = index.getComponents();
+
+        assertEquals(4, components.size());
+        assertTrue(components.indexOf(Arrays.asList("core")) < components.indexOf(Arrays.asList("api", "fixtures")));
+        assertTrue(components.indexOf(Arrays.asList("api", "fixtures")) < components.indexOf(Arrays.asList("app")));
+        assertEquals(Arrays.asList(Arrays.asList("api", "fixtures")), index.getCycles());
+        assertTrue(index.isSameComponent("api", "fixtures"));
+        assertFalse(index.isSameComponent("core", "api"));
+    }
+
+    @Test
+    public void cycleMembersShareUpstream() {
+        graph.edge("core", "a");
+        graph.edge("a", "b");
+        graph.edge("b", "a");
+
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(Arrays.asList("core", "a", "b"), index.getTransitiveUpstream("b"));
+        assertEquals(Arrays.asList("core", "a", "b"), index.getTransitiveUpstream("a"));
+        assertTrue(index.getTransitiveUpstream("core").isEmpty());
+    }
+
+    @Test
+    public void longestDownstreamPath() {
+        graph.edge("core", "left");
+        graph.edge("core", "right");
+        graph.edge("left", "app");
+        graph.edge("right", "app");
+        graph.edge("app", "tools");
+        graph.edge("tools", "app"); // closes a cycle, ignored
+
+        final Map<String, Long> durations = new HashMap<String, Long>();
+        durations.put("core", 10L);
+        durations.put("left", 5L);
+        durations.put("right", 20L);
+        durations.put("app", 1L);
+        durations.put("tools", 100L);
+
+        ReachabilityIndex.Weights<String> weights = new ReachabilityIndex.Weights<String>() {
+            public long getWeight(String node) {
+                return durations.get(node);
+            }
+        };
+
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(131L, index.getLongestDownstreamPath("core", weights));
+        assertEquals(106L, index.getLongestDownstreamPath("left", weights));
+        assertEquals(101L, index.getLongestDownstreamPath("tools", weights));
+        assertEquals(0L, index.getLongestDownstreamPath("unknown", weights));
+    }
+}
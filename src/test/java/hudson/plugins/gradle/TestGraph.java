@@ -0,0 +1,32 @@
+package hudson.plugins.gradle;
+
+import java.util.*;
+
+/**
+ * Graph of named nodes for the tests of the classes working on the dependency graph of jobs.
+ */
+class TestGraph {
+
+    private final Map<String, List<String>> upstream = new LinkedHashMap<String, List<String>>();
+
+    TestGraph node(String name) {
+        if (!upstream.containsKey(name))
+            upstream.put(name, new ArrayList<String>());
+        return this;
+    }
+
+    TestGraph edge(String from, String to) {
+        node(from);
+        node(to);
+        upstream.get(to).add(from);
+        return this;
+    }
+
+    ReachabilityIndex<String> index() {
+        return new ReachabilityIndex<String>(upstream.keySet(), new ReachabilityIndex.Edges<String>() {
+            public Collection<String> getUpstream(String node) {
+                return upstream.get(node);
+            }
+        });
+    }
+}
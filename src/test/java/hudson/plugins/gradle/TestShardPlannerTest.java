@@ -0,0 +1,87 @@
+package hudson.plugins.gradle;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestShardPlannerTest {
+
+    @Test
+    public void longestClassesFirst() {
+        Map<String, Long> durations = new HashMap<String, Long>();
+        durations.put("a.Huge", 100L);
+        durations.put("a.Big", 60L);
+        durations.put("a.Medium", 40L);
+        durations.put("a.Small", 20L);
+        durations.put("a.Tiny", 20L);
+
+        TestShardPlanner planner = new TestShardPlanner(durations, 2);
+
+        assertEquals(Arrays.asList("a.Huge", "a.Small"), planner.getClasses(0));
+        assertEquals(Arrays.asList("a.Big", "a.Medium", "a.Tiny"), planner.getClasses(1));
+        assertEquals(120L, planner.getLoad(0));
+        assertEquals(120L, planner.getLoad(1));
+    }
+
+    @Test
+    public void unknownClassesByName() {
+        TestShardPlanner planner = new TestShardPlanner(Collections.<String, Long>emptyMap(), 3);
+
+        for (String className : Arrays.asList("a.One", "b.Two", "c.Three")) {
+            int shard = planner.getShard(className);
+            assertEquals(TestShardPlanner.shardOf(className, 3), shard);
+            assertEquals(Math.abs(className.hashCode() % 3), shard);
+        }
+    }
+
+    @Test
+    public void everyClassInExactlyOneShard() {
+        Map<String, Long> durations = new HashMap<String, Long>();
+        for (int i = 0; i < 50; i++) {
+            durations.put("a.Known" + i, (long) (i * 37 % 11));
+        }
+
+        List<String> classes = new ArrayList<String>(durations.keySet());
+        for (int i = 0; i < 50; i++) {
+            classes.add("b.New" + i);
+        }
+
+        int shards = 4;
+        // every shard plans on its own, from the same snapshot
+        List<TestShardPlanner> planners = new ArrayList<TestShardPlanner>();
+        for (int s = 0; s < shards; s++) {
+            planners.add(new TestShardPlanner(durations, shards));
+        }
+
+        for (String className : classes) {
+            int runs = 0;
+            for (int s = 0; s < shards; s++) {
+                if (planners.get(s).getShard(className) == s)
+                    runs++;
+            }
+            assertEquals(className, 1, runs);
+        }
+
+        Set<String> planned = new HashSet<String>();
+        for (int s = 0; s < shards; s++) {
+            for (String className : planners.get(s).getClasses(s)) {
+                assertTrue(className, planned.add(className));
+            }
+        }
+        assertEquals(durations.keySet(), planned);
+    }
+
+    @Test
+    public void noShards() {
+        try {
+            new TestShardPlanner(Collections.<String, Long>emptyMap(), 0);
+            fail("zero shards accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package hudson.plugins.gradle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static hudson.plugins.gradle.WaveScheduler.Decision.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WaveSchedulerTest {
+
+    private TestGraph graph;
+    private WaveScheduler<String> scheduler;
+
+    @Before
+    public void setUp() {
+        graph = new TestGraph();
+        scheduler = new WaveScheduler<String>();
+
+        graph.edge("core", "left");
+        graph.edge("core", "right");
+        graph.edge("core", "app");
+        graph.edge("left", "app");
+        graph.edge("right", "app");
+        graph.node("unrelated");
+    }
+
+    @Test
+    public void diamondBuildsOnce() {
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(TRIGGER, scheduler.decide(index, "core", 1, true, "left"));
+        assertEquals(TRIGGER, scheduler.decide(index, "core", 1, true, "right"));
+        assertEquals(HOLD, scheduler.decide(index, "core", 1, true, "app"));
+        assertEquals(2, scheduler.getWave("core", "app"));
+
+        assertEquals(HOLD, scheduler.decide(index, "left", 7, true, "app"));
+        assertEquals(TRIGGER, scheduler.decide(index, "right", 3, true, "app"));
+        assertEquals(HOLD, scheduler.decide(index, "right", 3, true, "app"));
+    }
+
+    @Test
+    public void planEndsWhenAllNodesFinished() {
+        ReachabilityIndex<String> index = graph.index();
+
+        scheduler.decide(index, "core", 1, true, "left");
+        scheduler.decide(index, "left", 1, true, "app");
+        scheduler.decide(index, "right", 1, true, "app");
+        assertEquals(1, scheduler.getPlanCount());
+
+        // app has no downstream, so only its completion ends the plan
+        scheduler.completed("app", 1, true);
+        assertEquals(0, scheduler.getPlanCount());
+    }
+
+    @Test
+    public void rebuiltRootReplacesPlan() {
+        ReachabilityIndex<String> index = graph.index();
+
+        scheduler.decide(index, "core", 1, true, "left");
+        assertEquals(TRIGGER, scheduler.decide(index, "core", 2, true, "left"));
+        assertEquals(1, scheduler.getPlanCount());
+    }
+
+    @Test
+    public void skippedNodeIsNotWaitedFor() {
+        ReachabilityIndex<String> index = graph.index();
+
+        scheduler.decide(index, "core", 1, true, "left");
+        assertTrue(scheduler.skipped("left").isEmpty());
+        assertEquals(TRIGGER, scheduler.decide(index, "right", 1, true, "app"));
+    }
+
+    @Test
+    public void skipReleasesNodeOnlyWaitingForIt() {
+        ReachabilityIndex<String> index = graph.index();
+
+        scheduler.decide(index, "core", 1, true, "left");
+        assertEquals(HOLD, scheduler.decide(index, "right", 1, true, "app"));
+        assertEquals(Arrays.asList("app"), scheduler.skipped("left"));
+        assertEquals(HOLD, scheduler.decide(index, "right", 1, true, "app"));
+    }
+
+    @Test
+    public void skipPropagatesWhenNoUpstreamWasBuilt() {
+        graph.edge("left", "leaf");
+
+        ReachabilityIndex<String> index = graph.index();
+
+        scheduler.decide(index, "core", 1, true, "left");
+        // leaf only uses left, app also uses core itself
+        assertTrue(scheduler.skipped("left").isEmpty());
+        assertEquals(Arrays.asList("app"), scheduler.skipped("right"));
+        scheduler.completed("app", 1, true);
+        assertEquals(0, scheduler.getPlanCount());
+    }
+
+    @Test
+    public void vetoedNodeEndsPlan() {
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(TRIGGER, scheduler.decide(index, "core", 1, true, "left"));
+        scheduler.vetoed("left");
+        assertEquals(HOLD, scheduler.decide(index, "right", 1, true, "app"));
+        assertEquals(0, scheduler.getPlanCount());
+    }
+
+    @Test
+    public void builtUpstreamsCoverTheWholeWave() {
+        ReachabilityIndex<String> index = graph.index();
+
+        scheduler.decide(index, "core", 1, true, "left");
+        scheduler.skipped("right");
+        assertEquals(TRIGGER, scheduler.decide(index, "left", 4, true, "app"));
+
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        expected.put("core", 1);
+        expected.put("left", 4);
+        assertEquals(expected, scheduler.getBuiltUpstreams("app"));
+        assertTrue(scheduler.getBuiltUpstreams("unrelated").isEmpty());
+    }
+
+    @Test
+    public void failureHoldsDownstream() {
+        ReachabilityIndex<String> index = graph.index();
+
+        scheduler.decide(index, "core", 1, true, "left");
+        assertEquals(HOLD, scheduler.decide(index, "left", 1, false, "app"));
+        assertEquals(HOLD, scheduler.decide(index, "right", 1, true, "app"));
+    }
+
+    @Test
+    public void failedRootIsUnplanned() {
+        assertEquals(UNPLANNED, scheduler.decide(graph.index(), "core", 1, false, "left"));
+        assertEquals(0, scheduler.getPlanCount());
+    }
+
+    @Test
+    public void cyclesAreUnplanned() {
+        graph.edge("app", "left");
+
+        ReachabilityIndex<String> index = graph.index();
+
+        assertEquals(TRIGGER, scheduler.decide(index, "core", 1, true, "right"));
+        assertEquals(UNPLANNED, scheduler.decide(index, "core", 1, true, "left"));
+    }
+}
@@ -0,0 +1,44 @@
+package hudson.plugins.gradle.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyTest {
+
+    @Test
+    public void equalsIgnoresVersion() {
+        assertEquals(dependency("org", "lib", "1.0"), dependency("org", "lib", "2.0"));
+        assertEquals(dependency("org", "lib", "1.0").hashCode(), dependency("org", "lib", "2.0").hashCode());
+    }
+
+    @Test
+    public void satisfiedBySameVersion() {
+        assertTrue(dependency("org", "lib", "1.0").isSatisfiedBy(dependency("org", "lib", "1.0")));
+        assertFalse(dependency("org", "lib", "1.0").isSatisfiedBy(dependency("org", "lib", "1.1")));
+        assertFalse(dependency("org", "lib", "1.0").isSatisfiedBy(dependency("org", "other", "1.0")));
+    }
+
+    @Test
+    public void satisfiedByUnknownVersion() {
+        assertTrue(dependency("org", "lib", null).isSatisfiedBy(dependency("org", "lib", "1.0")));
+        assertTrue(dependency("org", "lib", "1.0").isSatisfiedBy(dependency("org", "lib", null)));
+    }
+
+    @Test
+    public void satisfiedBySnapshot() {
+        assertTrue(dependency("org", "lib", "1.0-20160329.164419-3").isSatisfiedBy(dependency("org", "lib", "1.0-SNAPSHOT")));
+        assertTrue(dependency("org", "lib", "1.0-SNAPSHOT").isSatisfiedBy(dependency("org", "lib", "1.0-SNAPSHOT")));
+        assertFalse(dependency("org", "lib", "0.9-SNAPSHOT").isSatisfiedBy(dependency("org", "lib", "1.0-SNAPSHOT")));
+    }
+
+    private Dependency dependency(String group, String name, String version) {
+        Dependency dependency = new Dependency();
+        dependency.setGroup(group);
+        dependency.setName(name);
+        dependency.setVersion(version);
+        return dependency;
+    }
+}
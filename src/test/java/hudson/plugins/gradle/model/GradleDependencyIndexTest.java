@@ -0,0 +1,132 @@
+package hudson.plugins.gradle.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GradleDependencyIndexTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dependency-index", "");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void summariesSurviveReopening() {
+        new GradleDependencyIndex(file).put("job", 42, summary("core", "1.0", "lib", null));
+
+        GradleDependencySummary summary = new GradleDependencyIndex(file).get("job", 42);
+
+        assertEquals("core", summary.getPublications().get(0).getName());
+        assertEquals("1.0", summary.getPublications().get(0).getVersion());
+        assertEquals("lib", summary.getDependencies().get(0).getName());
+        assertNull(summary.getDependencies().get(0).getVersion());
+    }
+
+    @Test
+    public void staleSummaryIsIgnored() {
+        new GradleDependencyIndex(file).put("job", 42, summary("core", "1.0", "lib", "2.0"));
+
+        assertNull(new GradleDependencyIndex(file).get("job", 43));
+    }
+
+    @Test
+    public void laterRecordsWin() {
+        GradleDependencyIndex index = new GradleDependencyIndex(file);
+        index.put("job", 1, summary("core", "1.0", "lib", "2.0"));
+        index.put("job", 2, summary("core", "1.1", "lib", "2.0"));
+        index.put("other", 1, summary("api", "1.0", "core", "1.1"));
+        index.remove("other");
+
+        index = new GradleDependencyIndex(file);
+        assertEquals("1.1", index.get("job", 2).getPublications().get(0).getVersion());
+        assertNull(index.get("other", 1));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void compactionKeepsLiveSummaries() {
+        GradleDependencyIndex index = new GradleDependencyIndex(file);
+        for (int i = 0; i < 500; i++) {
+            index.put("job", i, summary("core", "1." + i, "lib", "2.0"));
+        }
+        long compacted = file.length();
+
+        assertTrue(compacted < 500 * 30);
+        assertEquals("1.499", new GradleDependencyIndex(file).get("job", 499).getPublications().get(0).getVersion());
+    }
+
+    @Test
+    public void incompleteRecordIsDropped() throws IOException {
+        new GradleDependencyIndex(file).put("job", 1, summary("core", "1.0", "lib", "2.0"));
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {2, 0, 0, 1, 0, 7});
+        out.close();
+
+        GradleDependencyIndex index = new GradleDependencyIndex(file);
+        assertEquals("core", index.get("job", 1).getPublications().get(0).getName());
+
+        index.put("other", 1, summary("api", "1.0", "core", "1.0"));
+        assertEquals("api", new GradleDependencyIndex(file).get("other", 1).getPublications().get(0).getName());
+    }
+
+    @Test
+    public void indexIsDisabledWhenTheFileCannotBeReplaced() throws IOException {
+        new GradleDependencyIndex(file).put("job", 1, summary("core", "1.0", "lib", "2.0"));
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {2, 0, 0, 1, 0, 7});
+        out.close();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        assertTrue(tmp.mkdir());
+        try {
+            GradleDependencyIndex index = new GradleDependencyIndex(file);
+            assertNull(index.get("job", 1));
+
+            index.put("other", 1, summary("api", "1.0", "core", "1.0"));
+            assertNull(index.get("other", 1));
+            assertFalse(file.exists());
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static GradleDependencySummary summary(String publication, String version, String dependency, String dependencyVersion) {
+        List<Dependency> publications = new ArrayList<Dependency>();
+        publications.add(dependency("org", publication, version));
+
+        List<Dependency> dependencies = new ArrayList<Dependency>();
+        dependencies.add(dependency("org", dependency, dependencyVersion));
+
+        return new GradleDependencySummary(publications, dependencies);
+    }
+
+    private static Dependency dependency(String group, String name, String version) {
+        Dependency dependency = new Dependency();
+        dependency.setGroup(group);
+        dependency.setName(name);
+        dependency.setVersion(version);
+        return dependency;
+    }
+}
@@ -0,0 +1,75 @@
+package hudson.plugins.gradle.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GradleDependencyInfoCacheTest {
+
+    @Test
+    public void leastRecentlyUsedJobIsEvicted() {
+        GradleDependencyInfoCache cache = new GradleDependencyInfoCache(2);
+        List<GradleDependencyInfo> a = infos();
+        List<GradleDependencyInfo> b = infos();
+        List<GradleDependencyInfo> c = infos();
+
+        cache.put("a", a);
+        cache.put("b", b);
+        cache.get("a");
+        cache.put("c", c);
+
+        assertSame(a, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(c, cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void summaryKeepsDirectChildren() {
+        GradleDependencyInfo child = info("child", dependency("org", "lib", "1.0"));
+        GradleDependencyInfo root = info("root", dependency("org", "other", "2.0"));
+        root.setMultiProject(true);
+        root.getChildGradleDependencyInfos().add(child);
+
+        List<GradleDependencyInfo> infos = new ArrayList<GradleDependencyInfo>();
+        infos.add(root);
+        GradleDependencySummary summary = new GradleDependencySummary(infos);
+
+        assertEquals(2, summary.getPublications().size());
+        assertEquals("child", summary.getPublications().get(0).getName());
+        assertEquals(2, summary.getDependencies().size());
+    }
+
+    private static List<GradleDependencyInfo> infos() {
+        return new ArrayList<GradleDependencyInfo>();
+    }
+
+    private static GradleDependencyInfo info(String name, Dependency dependency) {
+        GradleDependencyInfo info = new GradleDependencyInfo();
+        info.setName(name);
+
+        List<Dependency> publications = new ArrayList<Dependency>();
+        publications.add(dependency("org", name, "1.0"));
+        info.setPublications(publications);
+
+        List<Dependency> dependencies = new ArrayList<Dependency>();
+        dependencies.add(dependency);
+        info.setDependencies(dependencies);
+
+        info.setChildren(new ArrayList<GradleDependencyInfo>());
+        return info;
+    }
+
+    private static Dependency dependency(String group, String name, String version) {
+        Dependency dependency = new Dependency();
+        dependency.setGroup(group);
+        dependency.setName(name);
+        dependency.setVersion(version);
+        return dependency;
+    }
+}
@@ -0,0 +1,42 @@
+package hudson.plugins.gradle.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GradleDependencyInfoTest {
+
+    @Test
+    public void newSnapshotTimestampIsNoChange() {
+        GradleDependencyInfo stored = info(dependency("1.0-20160329.164419-3"));
+
+        assertTrue(stored.compareAllDependencies(info(dependency("1.0-20160329.171002-4"))));
+        assertTrue(stored.compareAllDependencies(info(dependency("1.0-SNAPSHOT"))));
+        assertFalse(stored.compareAllDependencies(info(dependency("1.1-SNAPSHOT"))));
+    }
+
+    @Test
+    public void unversionedDependencyIsReplaced() {
+        assertFalse(info(dependency(null)).compareAllDependencies(info(dependency("1.0"))));
+    }
+
+    private GradleDependencyInfo info(Dependency dependency) {
+        GradleDependencyInfo info = new GradleDependencyInfo();
+        info.setDependencies(Arrays.asList(dependency));
+        info.setPublications(new ArrayList<Dependency>());
+        info.setChildren(new ArrayList<GradleDependencyInfo>());
+        return info;
+    }
+
+    private Dependency dependency(String version) {
+        Dependency dependency = new Dependency();
+        dependency.setGroup("org");
+        dependency.setName("lib");
+        dependency.setVersion(version);
+        return dependency;
+    }
+}